@@ -0,0 +1,61 @@
+package org.zopa.loanprovider;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Monthly payment calculation across terms.
+ * Rate with the scale a quote usually gets from the money-weighted rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AmortizationBenchmark {
+
+    @Param({"12", "36", "60", "120", "360"})
+    public int months;
+
+    private final BigDecimal rate = new BigDecimal("0.0697312");
+    private final BigDecimal amount = BigDecimal.valueOf(7500);
+
+    private AmortizationMethod frenchMethod;
+    private AmortizationMethod fastFrenchMethod;
+    private AmortizationMethod cachedMethod;
+
+    @Setup
+    public void setUp() {
+        frenchMethod = new FrenchAmortizationMethod();
+        fastFrenchMethod = new FastFrenchAmortizationMethod();
+        cachedMethod = new CachedAmortizationMethod(new FrenchAmortizationMethod());
+    }
+
+    @Benchmark
+    public BigDecimal french() {
+        return frenchMethod.calculateMonthlyPayment(rate, amount, months);
+    }
+
+    @Benchmark
+    public BigDecimal fastFrench() {
+        return fastFrenchMethod.calculateMonthlyPayment(rate, amount, months);
+    }
+
+    @Benchmark
+    public BigDecimal cachedFrench() {
+        return cachedMethod.calculateMonthlyPayment(rate, amount, months);
+    }
+}
@@ -0,0 +1,64 @@
+package org.zopa.loanprovider;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CSV parsing of market data files, and loading of the same market in the binary format.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class FileReaderBenchmark {
+
+    @Param({"1000", "1000000", "10000000"})
+    public int lines;
+
+    private String filePath;
+    private String binaryFilePath;
+
+    @Setup
+    public void setUp() throws IOException {
+        filePath = MarketGenerator.generateFile(lines);
+        binaryFilePath = filePath + ".bin";
+        BinaryMarketFile.convert(filePath, binaryFilePath);
+        new File(binaryFilePath).deleteOnExit();
+    }
+
+    @Benchmark
+    public List<LenderData> fileReader() throws IOException {
+        return FileReader.getMarketData(filePath);
+    }
+
+    @Benchmark
+    public List<LenderData> mappedFileReader() throws IOException {
+        return MappedFileReader.getMarketData(filePath);
+    }
+
+    @Benchmark
+    public List<LenderData> mappedFileReaderParallel() throws IOException {
+        return MappedFileReader.getMarketDataParallel(filePath);
+    }
+
+    @Benchmark
+    public ColumnarMarket binaryMarketFile() throws IOException {
+        return BinaryMarketFile.load(binaryFilePath);
+    }
+}
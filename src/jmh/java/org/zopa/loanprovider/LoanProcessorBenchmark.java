@@ -0,0 +1,84 @@
+package org.zopa.loanprovider;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Quotes (findLoanFor) over markets already loaded, for several market sizes and amounts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class LoanProcessorBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int lenders;
+
+    @Param({"1000", "7500", "15000"})
+    public int amount;
+
+    private BigDecimal amountRequested;
+    private List<LenderData> marketData;
+    private LoanProcessor loanProcessor;
+    private LoanProcessor indexedProcessor;
+    private ColumnarLoanProcessor columnarProcessor;
+    private ShardedLoanProcessor shardedProcessor;
+    private StreamingMatcher streamingMatcher;
+
+    @Setup
+    public void setUp() {
+        marketData = MarketGenerator.generate(lenders);
+        MarketSnapshot market = MarketSnapshot.of(marketData);
+        amountRequested = BigDecimal.valueOf(amount);
+        loanProcessor = new LoanProcessor(market, new FrenchAmortizationMethod());
+        indexedProcessor = new LoanProcessor(new PrefixSumIndex(market), new FrenchAmortizationMethod());
+        columnarProcessor = new ColumnarLoanProcessor(ColumnarMarket.of(marketData), new FrenchAmortizationMethod());
+        streamingMatcher = new StreamingMatcher(new FrenchAmortizationMethod());
+        shardedProcessor = new ShardedLoanProcessor(new ShardedMarket(marketData), new FrenchAmortizationMethod());
+    }
+
+    @Benchmark
+    public Optional<Loan> findLoanFor() {
+        return loanProcessor.findLoanFor(amountRequested, 36);
+    }
+
+    @Benchmark
+    public Optional<Loan> findLoanForIndexed() {
+        return indexedProcessor.findLoanFor(amountRequested, 36);
+    }
+
+    @Benchmark
+    public Optional<Loan> findLoanForColumnar() {
+        return columnarProcessor.findLoanFor(amountRequested, 36);
+    }
+
+    @Benchmark
+    public Optional<Loan> findLoanForSharded() {
+        return shardedProcessor.findLoanFor(amountRequested, 36);
+    }
+
+    /**
+     * Unsorted market: includes the pass over all the lenders (no market sort).
+     */
+    @Benchmark
+    public Optional<Loan> findLoanForStreaming() {
+        return streamingMatcher.findLoanFor(marketData.iterator(), amountRequested, 36);
+    }
+}
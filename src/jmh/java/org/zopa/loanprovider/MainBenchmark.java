@@ -0,0 +1,56 @@
+package org.zopa.loanprovider;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End to end quote as the console app does it: market data already read, Main.getLoan builds the processor and quotes.
+ * The loadAndQuote benchmark also reads the market file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class MainBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int lenders;
+
+    private final BigDecimal amount = BigDecimal.valueOf(7500);
+
+    private List<LenderData> marketData;
+    private String filePath;
+
+    @Setup
+    public void setUp() throws IOException {
+        marketData = MarketGenerator.generate(lenders);
+        filePath = MarketGenerator.generateFile(lenders);
+    }
+
+    @Benchmark
+    public Optional<Loan> getLoan() throws IOException {
+        return Main.getLoan(marketData, amount);
+    }
+
+    @Benchmark
+    public Optional<Loan> loadAndQuote() throws IOException {
+        return Main.getLoan(MappedFileReader.getMarketData(filePath), amount);
+    }
+}
@@ -0,0 +1,56 @@
+package org.zopa.loanprovider;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Synthetic market data for benchmarks. Fixed seed, so every run uses the same market.
+ * Rates between 0.020 and 0.120 (3 decimals) and available between 10 and 2000.
+ */
+public class MarketGenerator {
+
+    public static final long SEED = 20180414L;
+
+    public static List<LenderData> generate(int lenders) {
+        Random random = new Random(SEED);
+        List<LenderData> marketData = new ArrayList<>(lenders);
+        for (int i = 0; i < lenders; i++) {
+            marketData.add(new LenderData("Lender" + i, nextRate(random), nextAvailable(random)));
+        }
+        return marketData;
+    }
+
+    /**
+     * Write a market data CSV file (with header) in the temporary folder.
+     *
+     * @param lenders
+     * @return the file path
+     * @throws IOException
+     */
+    public static String generateFile(int lenders) throws IOException {
+        Random random = new Random(SEED);
+        File file = File.createTempFile("market-bench-", ".csv");
+        file.deleteOnExit();
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file), 1 << 16)) {
+            writer.write("Lender,Rate,Available\n");
+            for (int i = 0; i < lenders; i++) {
+                writer.write("Lender" + i + "," + nextRate(random).toPlainString() + "," + nextAvailable(random).toPlainString() + "\n");
+            }
+        }
+        return file.getPath();
+    }
+
+    private static BigDecimal nextRate(Random random) {
+        return BigDecimal.valueOf(20 + random.nextInt(101), 3);
+    }
+
+    private static BigDecimal nextAvailable(Random random) {
+        return BigDecimal.valueOf(10 + random.nextInt(1991));
+    }
+}
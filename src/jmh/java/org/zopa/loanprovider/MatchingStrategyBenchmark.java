@@ -0,0 +1,67 @@
+package org.zopa.loanprovider;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Quotes (findLoanFor) with each matching strategy over a market already indexed.
+ * Pro-rata visits every lender under the cap on each quote (around 6% of the market with this cap).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class MatchingStrategyBenchmark {
+
+    private static final BigDecimal RATE_CAP = new BigDecimal("0.025");
+
+    @Param({"1000000"})
+    public int lenders;
+
+    @Param({"cheapestFirst", "proRata", "fewestLenders"})
+    public String strategy;
+
+    @Param({"1000", "7500", "15000"})
+    public int amount;
+
+    private BigDecimal amountRequested;
+    private LoanProcessor loanProcessor;
+
+    @Setup
+    public void setUp() {
+        MarketSnapshot market = MarketSnapshot.of(MarketGenerator.generate(lenders));
+        amountRequested = BigDecimal.valueOf(amount);
+        loanProcessor = new LoanProcessor(market, new FrenchAmortizationMethod(), strategyFor(strategy));
+    }
+
+    @Benchmark
+    public Optional<Loan> findLoanFor() {
+        return loanProcessor.findLoanFor(amountRequested, 36);
+    }
+
+    private static MatchingStrategy strategyFor(String strategy) {
+        switch (strategy) {
+            case "proRata":
+                return new ProRataStrategy(RATE_CAP);
+            case "fewestLenders":
+                return new FewestLendersStrategy();
+            default:
+                return new CheapestFirstStrategy();
+        }
+    }
+}
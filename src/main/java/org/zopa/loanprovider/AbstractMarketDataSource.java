@@ -0,0 +1,172 @@
+package org.zopa.loanprovider;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.stream.Stream;
+
+/**
+ * Base of the sources reading lenders one by one: a reader task (on the executor given, or its own daemon thread)
+ * groups them in batches and keeps up to {@code capacity} batches ready. When they are not consumed the reader waits,
+ * so the executor must run it on a thread other than the consumer's one.
+ */
+public abstract class AbstractMarketDataSource implements MarketDataSource {
+
+    public static final int DEFAULT_BATCH_SIZE = 1024;
+    public static final int DEFAULT_CAPACITY = 16;
+
+    private static final List<LenderData> END = Collections.emptyList();
+
+    private final int batchSize;
+    private final int capacity;
+    private final Executor executor;
+    private final Deque<List<LenderData>> ready = new ArrayDeque<>();
+    private CompletableFuture<List<LenderData>> pending;
+    private Throwable failure;
+    private boolean started;
+    private boolean finished;
+    private boolean closed;
+
+    protected AbstractMarketDataSource(int batchSize, int capacity, Executor executor) {
+        if (batchSize <= 0 || capacity <= 0) {
+            throw new IllegalArgumentException("Batch size and capacity must be positive");
+        }
+        this.batchSize = batchSize;
+        this.capacity = capacity;
+        this.executor = executor;
+    }
+
+    protected AbstractMarketDataSource() {
+        this(DEFAULT_BATCH_SIZE, DEFAULT_CAPACITY, runnable -> {
+            Thread thread = new Thread(runnable, "market-data-source");
+            thread.setDaemon(true);
+            thread.start();
+        });
+    }
+
+    /**
+     * Open the lenders to read. Called once, from the reader task. The stream is closed when the reading ends.
+     *
+     * @return
+     * @throws Exception
+     */
+    protected abstract Stream<LenderData> open() throws Exception;
+
+    @Override
+    public CompletableFuture<List<LenderData>> nextBatch() {
+        CompletableFuture<List<LenderData>> result;
+        boolean start = false;
+        synchronized (this) {
+            if (!started) {
+                // Reading starts on the first request
+                started = true;
+                start = true;
+            }
+        }
+        if (start) {
+            executor.execute(this::read);
+        }
+        synchronized (this) {
+            if (pending != null) {
+                throw new IllegalStateException("Previous batch not received yet");
+            }
+            if (!ready.isEmpty()) {
+                result = CompletableFuture.completedFuture(ready.poll());
+                notifyAll();
+            } else if (failure != null) {
+                result = new CompletableFuture<>();
+                result.completeExceptionally(failure);
+            } else if (finished || closed) {
+                result = CompletableFuture.completedFuture(END);
+            } else {
+                pending = new CompletableFuture<>();
+                return pending;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void close() {
+        CompletableFuture<List<LenderData>> request;
+        synchronized (this) {
+            closed = true;
+            ready.clear();
+            request = pending;
+            pending = null;
+            notifyAll();
+        }
+        if (request != null) {
+            request.complete(END);
+        }
+    }
+
+    private void read() {
+        try (Stream<LenderData> lenders = open()) {
+            Iterator<LenderData> iterator = lenders.iterator();
+            List<LenderData> batch = new ArrayList<>(batchSize);
+            while (iterator.hasNext() && !isClosed()) {
+                batch.add(iterator.next());
+                if (batch.size() == batchSize) {
+                    deliver(batch);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            if (!batch.isEmpty()) {
+                deliver(batch);
+            }
+            finish(null);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            finish(e);
+        } catch (Exception e) {
+            finish(e);
+        }
+    }
+
+    private synchronized boolean isClosed() {
+        return closed;
+    }
+
+    private void deliver(List<LenderData> batch) throws InterruptedException {
+        CompletableFuture<List<LenderData>> request;
+        synchronized (this) {
+            while (ready.size() >= capacity && !closed) {
+                wait();
+            }
+            if (closed) {
+                return;
+            }
+            if (pending == null) {
+                ready.add(batch);
+                return;
+            }
+            request = pending;
+            pending = null;
+        }
+        // Completed out of the lock: the consumer may continue on this thread
+        request.complete(batch);
+    }
+
+    private void finish(Throwable error) {
+        CompletableFuture<List<LenderData>> request;
+        synchronized (this) {
+            finished = true;
+            failure = error;
+            request = pending;
+            pending = null;
+        }
+        if (request != null) {
+            if (error == null) {
+                request.complete(END);
+            } else {
+                request.completeExceptionally(error);
+            }
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package org.zopa.loanprovider;
 
 import java.math.BigDecimal;
+import java.util.stream.Stream;
 
 /**
  * Abstract amortization.
@@ -9,4 +10,29 @@ import java.math.BigDecimal;
 public interface AmortizationMethod {
 
     BigDecimal calculateMonthlyPayment(BigDecimal rate, BigDecimal amount, int months);
+
+    /**
+     * Month by month breakdown (payment, interest, principal and balance), calculated lazily.
+     * See {@link AmortizationSchedule} for the rounding.
+     *
+     * @param rate
+     * @param amount
+     * @param months
+     * @return
+     */
+    default Stream<ScheduleRow> schedule(BigDecimal rate, BigDecimal amount, int months) {
+        return AmortizationSchedule.stream(this, rate, amount, months);
+    }
+
+    /**
+     * Same breakdown as {@link #schedule} in pence, without allocating per month.
+     *
+     * @param rate
+     * @param amount
+     * @param months
+     * @return
+     */
+    default ScheduleCursor scheduleCursor(BigDecimal rate, BigDecimal amount, int months) {
+        return new ScheduleCursor(this, rate, amount, months);
+    }
 }
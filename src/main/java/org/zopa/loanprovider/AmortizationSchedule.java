@@ -0,0 +1,113 @@
+package org.zopa.loanprovider;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Month by month breakdown of a loan, calculated lazily: each row is built when it is requested,
+ * only the balance is kept, so a schedule can be streamed (e.g. to a file) without holding it in memory.
+ *
+ * Rounding (all money in pence):
+ * payment is the monthly payment of the amortization method rounded up (as printed for the quote),
+ * interest is balance x monthly rate rounded half up, the monthly rate being rate / 12 rounded up at the
+ * scale of the rate (as {@link FrenchAmortizationMethod}), and principal is payment - interest.
+ * The last month pays the balance left, so the balance always ends at 0.
+ * {@link ScheduleCursor} gives the same rows with primitive arithmetic.
+ */
+public class AmortizationSchedule implements Iterator<ScheduleRow> {
+
+    static final int SCALE = 2;
+
+    private static final String CSV_HEADER = "Month,Payment,Interest,Principal,Balance";
+
+    private final BigDecimal monthlyRate;
+    private final BigDecimal payment;
+    private final int months;
+    private BigDecimal balance;
+    private int month;
+
+    public AmortizationSchedule(AmortizationMethod amortizationMethod, BigDecimal rate, BigDecimal amount, int months) {
+        this.monthlyRate = monthlyRate(rate);
+        this.payment = monthlyPayment(amortizationMethod, rate, amount, months);
+        this.months = months;
+        this.balance = amount.setScale(SCALE, BigDecimal.ROUND_HALF_UP);
+    }
+
+    /**
+     * Lazy stream of the schedule.
+     *
+     * @param amortizationMethod
+     * @param rate
+     * @param amount
+     * @param months
+     * @return
+     */
+    public static Stream<ScheduleRow> stream(AmortizationMethod amortizationMethod, BigDecimal rate, BigDecimal amount, int months) {
+        return stream(new AmortizationSchedule(amortizationMethod, rate, amount, months));
+    }
+
+    /**
+     * Stream of the rows left in the schedule: each row is calculated when the stream consumes it.
+     */
+    static Stream<ScheduleRow> stream(AmortizationSchedule schedule) {
+        int characteristics = Spliterator.ORDERED | Spliterator.SIZED | Spliterator.NONNULL | Spliterator.IMMUTABLE;
+        return StreamSupport.stream(Spliterators.spliterator(schedule, Math.max(schedule.months - schedule.month, 0), characteristics), false);
+    }
+
+    /**
+     * Write the rows as CSV (with header) while they are calculated.
+     *
+     * @param rows
+     * @param writer
+     * @throws IOException
+     */
+    public static void writeCsv(Stream<ScheduleRow> rows, Writer writer) throws IOException {
+        writer.write(CSV_HEADER);
+        writer.write(System.lineSeparator());
+        try {
+            rows.forEachOrdered(row -> {
+                try {
+                    writer.write(row.getMonth() + "," + row.getPayment() + "," + row.getInterest() + ","
+                            + row.getPrincipal() + "," + row.getBalance() + System.lineSeparator());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        return month < months;
+    }
+
+    @Override
+    public ScheduleRow next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        month++;
+        BigDecimal interest = balance.multiply(monthlyRate).setScale(SCALE, BigDecimal.ROUND_HALF_UP);
+        BigDecimal principal = month == months ? balance : payment.subtract(interest).min(balance);
+        balance = balance.subtract(principal);
+        return new ScheduleRow(month, interest.add(principal), interest, principal, balance);
+    }
+
+    static BigDecimal monthlyRate(BigDecimal rate) {
+        return rate.divide(BigDecimal.valueOf(12), BigDecimal.ROUND_CEILING);
+    }
+
+    static BigDecimal monthlyPayment(AmortizationMethod amortizationMethod, BigDecimal rate, BigDecimal amount, int months) {
+        return amortizationMethod.calculateMonthlyPayment(rate, amount, months).setScale(SCALE, BigDecimal.ROUND_CEILING);
+    }
+}
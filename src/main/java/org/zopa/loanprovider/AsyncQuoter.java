@@ -0,0 +1,109 @@
+package org.zopa.loanprovider;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Quotes over a {@link MarketDataSource} while it is being loaded.
+ * With a sorted source the quote is done as soon as the cheapest lenders received cover the amount,
+ * and the source is closed without reading the rest. Otherwise the lenders are consumed as they arrive
+ * keeping only the cheapest ones (see {@link StreamingMatcher}).
+ * Either way the loan is the same {@link LoanProcessor} calculates over the whole market.
+ */
+public class AsyncQuoter {
+
+    private final AmortizationMethod amortizationMethod;
+    private final Executor executor;
+
+    public AsyncQuoter(AmortizationMethod amortizationMethod) {
+        this(amortizationMethod, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param amortizationMethod
+     * @param executor runs the consumption of the batches
+     */
+    public AsyncQuoter(AmortizationMethod amortizationMethod, Executor executor) {
+        this.amortizationMethod = amortizationMethod;
+        this.executor = executor;
+    }
+
+    /**
+     * Consume the source (closed at the end) and quote.
+     *
+     * @param source
+     * @param amount
+     * @param months
+     * @return
+     */
+    public CompletableFuture<Optional<Loan>> findLoanFor(MarketDataSource source, BigDecimal amount, int months) {
+        return CompletableFuture.supplyAsync(() -> {
+            try (MarketDataSource lenders = source) {
+                if (!lenders.isSorted()) {
+                    return new StreamingMatcher(amortizationMethod).findLoanFor(iterator(lenders), amount, months);
+                }
+                List<LenderData> cheapest = new ArrayList<>();
+                BigDecimal collected = BigDecimal.ZERO;
+                for (Iterator<LenderData> it = iterator(lenders); it.hasNext() && collected.compareTo(amount) < 0; ) {
+                    LenderData lenderData = it.next();
+                    cheapest.add(lenderData);
+                    collected = collected.add(lenderData.getAvailable());
+                }
+                return new LoanProcessor(cheapest, amortizationMethod).findLoanFor(amount, months);
+            }
+        }, executor);
+    }
+
+    /**
+     * Load all the lenders of the source (closed at the end).
+     *
+     * @param source
+     * @return
+     */
+    public CompletableFuture<List<LenderData>> loadAll(MarketDataSource source) {
+        return CompletableFuture.supplyAsync(() -> {
+            try (MarketDataSource lenders = source) {
+                List<LenderData> marketData = new ArrayList<>();
+                iterator(lenders).forEachRemaining(marketData::add);
+                return marketData;
+            }
+        }, executor);
+    }
+
+    /**
+     * Lenders of the source, waiting for each batch when it is needed.
+     */
+    private static Iterator<LenderData> iterator(MarketDataSource source) {
+        return new Iterator<LenderData>() {
+
+            private Iterator<LenderData> batch = Collections.emptyIterator();
+            private boolean end;
+
+            @Override
+            public boolean hasNext() {
+                while (!batch.hasNext() && !end) {
+                    List<LenderData> lenders = source.nextBatch().join();
+                    end = lenders.isEmpty();
+                    batch = lenders.iterator();
+                }
+                return batch.hasNext();
+            }
+
+            @Override
+            public LenderData next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return batch.next();
+            }
+        };
+    }
+}
@@ -0,0 +1,51 @@
+package org.zopa.loanprovider;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Price many quotes against the same market in one pass.
+ * The market is walked once to build a {@link PrefixSumIndex}, then each amount is a binary search
+ * plus the part taken from one lender (see the index for how the rate is calculated).
+ */
+public class BatchQuoter {
+
+    private final PrefixSumIndex index;
+    private final AmortizationMethod amortizationMethod;
+
+    public BatchQuoter(MarketSnapshot market, AmortizationMethod amortizationMethod) {
+        this(new PrefixSumIndex(market), amortizationMethod);
+    }
+
+    public BatchQuoter(PrefixSumIndex index, AmortizationMethod amortizationMethod) {
+        this.index = index;
+        this.amortizationMethod = amortizationMethod;
+    }
+
+    /**
+     * Quote all the requests. Rates are calculated once per amount and shared by all the terms.
+     *
+     * @param requests
+     * @return loan (or empty when there are not sufficient offers) for each request, in the same order
+     */
+    public Map<QuoteRequest, Optional<Loan>> findLoansFor(Collection<QuoteRequest> requests) {
+        Map<BigDecimal, Optional<BigDecimal>> rates = new HashMap<>();
+        Map<QuoteRequest, Optional<Loan>> loans = new LinkedHashMap<>();
+        for (QuoteRequest request : requests) {
+            BigDecimal amount = request.getAmount();
+            Optional<BigDecimal> rate = rates.computeIfAbsent(amount.stripTrailingZeros(), key -> index.calculateShareRate(amount));
+            loans.put(request, rate.map(loanRate -> buildLoan(loanRate, amount, request.getMonths())));
+        }
+        return loans;
+    }
+
+    private Loan buildLoan(BigDecimal loanRate, BigDecimal amount, int months) {
+        BigDecimal monthtlyPayment = amortizationMethod.calculateMonthlyPayment(loanRate, amount, months);
+        BigDecimal totalRepayment = monthtlyPayment.multiply(BigDecimal.valueOf(months));
+        return new Loan(amount, loanRate, monthtlyPayment, totalRepayment);
+    }
+}
@@ -0,0 +1,34 @@
+package org.zopa.loanprovider;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.stream.Stream;
+
+/**
+ * Binary market data file (see {@link BinaryMarketFile}). Lenders are stored sorted, so they are delivered sorted.
+ * They are read from the file as the batches are requested (see {@link BinaryMarketFile#stream}), so quotes can be
+ * answered from the first batches without reading the whole file.
+ */
+public class BinaryMarketDataSource extends AbstractMarketDataSource {
+
+    private final String filePath;
+
+    public BinaryMarketDataSource(String filePath) {
+        this.filePath = filePath;
+    }
+
+    public BinaryMarketDataSource(String filePath, int batchSize, int capacity, Executor executor) {
+        super(batchSize, capacity, executor);
+        this.filePath = filePath;
+    }
+
+    @Override
+    protected Stream<LenderData> open() throws IOException {
+        return BinaryMarketFile.stream(filePath);
+    }
+
+    @Override
+    public boolean isSorted() {
+        return true;
+    }
+}
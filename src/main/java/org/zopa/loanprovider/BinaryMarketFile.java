@@ -0,0 +1,299 @@
+package org.zopa.loanprovider;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * Binary snapshot of the market data, loaded straight into a {@link ColumnarMarket} without parsing text.
+ *
+ * Format (version 2, big-endian):
+ * magic "LPMK", version (short), names count (int), lenders count (int),
+ * name dictionary (length (short) + UTF-8 bytes per name),
+ * name index column (int per lender), rate column (basis points, long per lender),
+ * available column (pence, long per lender), rate scale column (scale the rate was given with, byte per lender),
+ * CRC32 of all the previous bytes (int).
+ * Version 1 files (without rate scales) are still read, their rates without trailing zeros.
+ * Lenders are stored already sorted (cheapest first), so loading does not sort them again.
+ * The file is memory-mapped, so it is limited to 2GB (around 100 million lenders).
+ */
+public class BinaryMarketFile {
+
+    private static final int MAGIC = 0x4C504D4B; // LPMK
+    private static final short VERSION = 2;
+    private static final short VERSION_WITHOUT_SCALES = 1;
+    private static final int HEADER_SIZE = 4 + 2 + 4 + 4;
+    private static final int CHECKSUM_SIZE = 4;
+    private static final int MAX_NAME_LENGTH = 0xFFFF;
+
+    /**
+     * True when the file starts as a binary market file (otherwise it is expected to be CSV).
+     *
+     * @param filePath
+     * @return
+     * @throws IOException
+     */
+    public static boolean isBinary(String filePath) throws IOException {
+        byte[] magic = new byte[4];
+        try (InputStream in = Files.newInputStream(Paths.get(filePath))) {
+            return in.read(magic) == magic.length && ByteBuffer.wrap(magic).getInt() == MAGIC;
+        }
+    }
+
+    public static ColumnarMarket load(String filePath) throws IOException {
+        try {
+            return read(map(filePath));
+        } catch (ParseException e) {
+            throw new RuntimeException(e.getMessage());
+        }
+    }
+
+    /**
+     * Lenders of the file one by one (cheapest first), read from the mapped columns as the stream is consumed,
+     * so the first ones are available without reading the whole file.
+     * Only the header and the name dictionary are checked up front: the checksum is checked when the last lender
+     * is read, so a corrupted file fails after some lenders were already delivered (as a corrupted CSV file does).
+     *
+     * @param filePath
+     * @return
+     * @throws IOException
+     */
+    public static Stream<LenderData> stream(String filePath) throws IOException {
+        try {
+            LenderIterator lenders = new LenderIterator(map(filePath));
+            return StreamSupport.stream(Spliterators.spliterator(lenders, lenders.lendersCount,
+                    Spliterator.ORDERED | Spliterator.NONNULL), false);
+        } catch (ParseException e) {
+            throw new RuntimeException(e.getMessage());
+        }
+    }
+
+    /**
+     * Write the market to a new file (written to a temporary file and then moved, so readers never see it half written).
+     *
+     * @param market
+     * @param filePath
+     * @throws IOException
+     */
+    public static void write(ColumnarMarket market, String filePath) throws IOException {
+        Path file = Paths.get(filePath);
+        Path tmp = Paths.get(filePath + ".tmp");
+        CRC32 checksum = new CRC32();
+        try (DataOutputStream out = new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)), checksum))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeInt(market.getNamesCount());
+            out.writeInt(market.size());
+            for (int i = 0; i < market.getNamesCount(); i++) {
+                byte[] name = market.getDictionaryName(i).getBytes(StandardCharsets.UTF_8);
+                if (name.length > MAX_NAME_LENGTH) {
+                    throw new IOException(format("Lender name too long: {0}", market.getDictionaryName(i)));
+                }
+                out.writeShort(name.length);
+                out.write(name);
+            }
+            for (int i = 0; i < market.size(); i++) {
+                out.writeInt(market.getNameIndex(i));
+            }
+            for (int i = 0; i < market.size(); i++) {
+                out.writeLong(market.getRate(i));
+            }
+            for (int i = 0; i < market.size(); i++) {
+                out.writeLong(market.getAvailable(i));
+            }
+            for (int i = 0; i < market.size(); i++) {
+                out.writeByte(market.getRateScale(i));
+            }
+            out.writeInt((int) checksum.getValue());
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Convert a CSV market data file to the binary format.
+     *
+     * @param csvFilePath
+     * @param binaryFilePath
+     * @throws IOException
+     */
+    public static void convert(String csvFilePath, String binaryFilePath) throws IOException {
+        write(ColumnarMarket.of(MappedFileReader.getMarketData(csvFilePath)), binaryFilePath);
+    }
+
+    private static MappedByteBuffer map(String filePath) throws IOException {
+        // The mapping stays valid once the channel is closed
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new RuntimeException("Error reading binary market data file. File too large");
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+    }
+
+    private static void checkHeader(ByteBuffer buffer) throws ParseException {
+        if (buffer.limit() < HEADER_SIZE + CHECKSUM_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new ParseException("Error reading binary market data file. Invalid header", 0);
+        }
+        if (buffer.getShort(4) != VERSION && buffer.getShort(4) != VERSION_WITHOUT_SCALES) {
+            throw new ParseException(format("Error reading binary market data file. Unsupported version {0}", String.valueOf(buffer.getShort(4))), 4);
+        }
+    }
+
+    private static void checkChecksum(ByteBuffer buffer) throws ParseException {
+        int size = buffer.limit();
+        CRC32 checksum = new CRC32();
+        ByteBuffer content = buffer.duplicate();
+        content.position(0);
+        content.limit(size - CHECKSUM_SIZE);
+        checksum.update(content);
+        if ((int) checksum.getValue() != buffer.getInt(size - CHECKSUM_SIZE)) {
+            throw new ParseException("Error reading binary market data file. Invalid checksum", size - CHECKSUM_SIZE);
+        }
+    }
+
+    private static String[] readNames(ByteBuffer buffer, int namesCount) {
+        String[] names = new String[namesCount];
+        byte[] bytes = new byte[256];
+        for (int i = 0; i < namesCount; i++) {
+            int length = Short.toUnsignedInt(buffer.getShort());
+            if (length > bytes.length) {
+                bytes = new byte[length];
+            }
+            buffer.get(bytes, 0, length);
+            names[i] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+        }
+        return names;
+    }
+
+    private static boolean hasRateScales(ByteBuffer buffer) {
+        return buffer.getShort(4) == VERSION;
+    }
+
+    private static void checkColumnsSize(ByteBuffer buffer, int lendersCount) throws ParseException {
+        int lenderSize = 4 + 8 + 8 + (hasRateScales(buffer) ? 1 : 0);
+        if (buffer.remaining() != (long) lendersCount * lenderSize + CHECKSUM_SIZE) {
+            throw new ParseException("Error reading binary market data file. Invalid size", buffer.position());
+        }
+    }
+
+    private static ColumnarMarket read(ByteBuffer buffer) throws ParseException {
+        checkHeader(buffer);
+        checkChecksum(buffer);
+
+        buffer.position(6);
+        int namesCount = buffer.getInt();
+        int lendersCount = buffer.getInt();
+        String[] names = readNames(buffer, namesCount);
+        checkColumnsSize(buffer, lendersCount);
+        int[] nameIndexes = new int[lendersCount];
+        long[] rates = new long[lendersCount];
+        byte[] rateScales = new byte[lendersCount];
+        long[] available = new long[lendersCount];
+        buffer.asIntBuffer().get(nameIndexes);
+        buffer.position(buffer.position() + lendersCount * 4);
+        buffer.asLongBuffer().get(rates);
+        buffer.position(buffer.position() + lendersCount * 8);
+        buffer.asLongBuffer().get(available);
+        buffer.position(buffer.position() + lendersCount * 8);
+        if (hasRateScales(buffer)) {
+            buffer.get(rateScales);
+        } else {
+            for (int i = 0; i < lendersCount; i++) {
+                rateScales[i] = ColumnarMarket.scaleOf(rates[i]);
+            }
+        }
+        return ColumnarMarket.ofSorted(names, nameIndexes, rates, rateScales, available);
+    }
+
+    /**
+     * Reads each lender from the three columns (absolute positions), checks the checksum after the last one.
+     */
+    private static class LenderIterator implements Iterator<LenderData> {
+
+        private final ByteBuffer buffer;
+        private final String[] names;
+        private final int lendersCount;
+        private final int nameIndexes;
+        private final int rates;
+        private final int available;
+        private final int rateScales;
+        private int next;
+        private boolean checked;
+
+        LenderIterator(ByteBuffer buffer) throws ParseException {
+            checkHeader(buffer);
+            buffer.position(6);
+            int namesCount = buffer.getInt();
+            this.lendersCount = buffer.getInt();
+            this.names = readNames(buffer, namesCount);
+            checkColumnsSize(buffer, lendersCount);
+            this.buffer = buffer;
+            this.nameIndexes = buffer.position();
+            this.rates = nameIndexes + lendersCount * 4;
+            this.available = rates + lendersCount * 8;
+            this.rateScales = hasRateScales(buffer) ? available + lendersCount * 8 : -1;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next < lendersCount) {
+                return true;
+            }
+            if (!checked) {
+                try {
+                    checkChecksum(buffer);
+                } catch (ParseException e) {
+                    throw new RuntimeException(e.getMessage());
+                }
+                checked = true;
+            }
+            return false;
+        }
+
+        @Override
+        public LenderData next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            int nameIndex = buffer.getInt(nameIndexes + next * 4);
+            if (nameIndex < 0 || nameIndex >= names.length) {
+                throw new RuntimeException(format("Error reading binary market data file. Invalid name of lender {0}", String.valueOf(next)));
+            }
+            long rate = buffer.getLong(rates + next * 8);
+            int rateScale = rateScales < 0 ? ColumnarMarket.scaleOf(rate) : buffer.get(rateScales + next);
+            LenderData lenderData;
+            try {
+                lenderData = new LenderData(names[nameIndex],
+                        ColumnarMarket.fromRate(rate, rateScale),
+                        ColumnarMarket.fromAmount(buffer.getLong(available + next * 8)));
+            } catch (ArithmeticException e) {
+                // Not checked by the checksum yet
+                throw new RuntimeException(format("Error reading binary market data file. Invalid rate of lender {0}", String.valueOf(next)));
+            }
+            next++;
+            return lenderData;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package org.zopa.loanprovider;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+import java.math.BigDecimal;
+import java.util.Objects;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * Amortization decorator caching the annuity factor (monthly payment for an amount of 1) by rate and months.
+ * Then a monthly payment is a single multiply: amount x factor.
+ * Only valid for methods where the payment is proportional to the amount, like {@link FrenchAmortizationMethod}
+ * (with it the results are exactly the same). Rates are cached as given, so 0.07 and 0.070 are different entries.
+ * Bounded (least recently used entries are evicted) and thread-safe.
+ */
+public class CachedAmortizationMethod implements AmortizationMethod {
+
+    public static final long DEFAULT_MAXIMUM_SIZE = 10_000;
+
+    private final AmortizationMethod amortizationMethod;
+    private final Cache<FactorKey, BigDecimal> factors;
+
+    public CachedAmortizationMethod(AmortizationMethod amortizationMethod) {
+        this(amortizationMethod, DEFAULT_MAXIMUM_SIZE);
+    }
+
+    public CachedAmortizationMethod(AmortizationMethod amortizationMethod, long maximumSize) {
+        this.amortizationMethod = amortizationMethod;
+        this.factors = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .recordStats()
+                .build();
+    }
+
+    public BigDecimal calculateMonthlyPayment(BigDecimal rate, BigDecimal amount, int months) throws ArithmeticException {
+        FactorKey key = new FactorKey(rate, months);
+        BigDecimal factor = factors.getIfPresent(key);
+        if (factor == null) {
+            try {
+                factor = amortizationMethod.calculateMonthlyPayment(rate, BigDecimal.ONE, months);
+            } catch (ArithmeticException e) {
+                throw new ArithmeticException(format("Error calculating loan amortization for rate {0} amount {1}", rate.toString(), amount.toString()));
+            }
+            // Concurrent misses for the same key calculate the same factor, the last one is kept
+            factors.put(key, factor);
+        }
+        return amount.multiply(factor);
+    }
+
+    /**
+     * Hits, misses and evictions since the cache was created.
+     *
+     * @return
+     */
+    public CacheStats getStats() {
+        return factors.stats();
+    }
+
+    public long size() {
+        return factors.size();
+    }
+
+    private static final class FactorKey {
+
+        private final BigDecimal rate;
+        private final int months;
+
+        FactorKey(BigDecimal rate, int months) {
+            this.rate = rate;
+            this.months = months;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof FactorKey)) {
+                return false;
+            }
+            FactorKey other = (FactorKey) o;
+            return months == other.months && rate.equals(other.rate);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(rate, months);
+        }
+    }
+}
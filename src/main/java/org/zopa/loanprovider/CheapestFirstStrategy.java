@@ -0,0 +1,17 @@
+package org.zopa.loanprovider;
+
+/**
+ * Cheapest lenders first (the default matching of {@link LoanProcessor}): all of them fully but the last one.
+ * Indexed by cumulative available in rate order, the lenders taken are found with a binary search.
+ */
+public class CheapestFirstStrategy implements MatchingStrategy {
+
+    @Override
+    public Matcher index(MarketSnapshot market) {
+        LenderData[] lenders = new LenderData[market.size()];
+        for (int i = 0; i < lenders.length; i++) {
+            lenders[i] = market.get(i);
+        }
+        return new PrefixMatcher(lenders);
+    }
+}
@@ -0,0 +1,63 @@
+package org.zopa.loanprovider;
+
+import java.math.BigDecimal;
+import java.util.Optional;
+
+/**
+ * Same matching as {@link LoanProcessor} but over a {@link ColumnarMarket}:
+ * the walk over the cheapest lenders and the money-weighted rate are done with long arithmetic.
+ * The rate is exactly the same one calculated by {@link LoanProcessor} (share of each lender rounded up to 4 decimals).
+ */
+public class ColumnarLoanProcessor {
+
+    private static final long SHARE_UNIT = 10_000;
+
+    private final ColumnarMarket market;
+    private final AmortizationMethod amortizationMethod;
+
+    public ColumnarLoanProcessor(ColumnarMarket market, AmortizationMethod amortizationMethod) {
+        this.market = market;
+        this.amortizationMethod = amortizationMethod;
+    }
+
+    public Optional<Loan> findLoanFor(BigDecimal amount, int months) {
+        long amountRequested = ColumnarMarket.toAmount(amount);
+        if (amountRequested <= market.getTotalAvailable()) {
+            // Loan is possible. So calculate best match
+            BigDecimal loanRate = calculateShareRate(amountRequested);
+            BigDecimal monthtlyPayment = amortizationMethod.calculateMonthlyPayment(loanRate, amount, months);
+            BigDecimal totalRepayment = monthtlyPayment.multiply(BigDecimal.valueOf(months));
+            return Optional.of(new Loan(amount, loanRate, monthtlyPayment, totalRepayment));
+        } else {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Money-Weighted Rate calculator: collect the cheapest lenders until get the amount requested
+     * and add up their shares (rounded up to 4 decimals) multiplied by their rate.
+     * The result keeps the scale {@link LoanProcessor} gets (share scale plus the biggest scale of the rates taken).
+     *
+     * @param amountRequested in pence
+     * @return
+     */
+    private BigDecimal calculateShareRate(long amountRequested) {
+        long collected = 0;
+        long weightedRate = 0;
+        int scale = 0;
+        for (int i = 0; i < market.size() && collected < amountRequested; i++) {
+            long borrowed = Math.min(market.getAvailable(i), amountRequested - collected);
+            collected += borrowed;
+            long share = ceilDiv(Math.multiplyExact(borrowed, SHARE_UNIT), amountRequested);
+            weightedRate = Math.addExact(weightedRate, Math.multiplyExact(share, market.getRate(i)));
+            scale = Math.max(scale, ColumnarMarket.RATE_SCALE + market.getRateScale(i));
+        }
+        // share (scale 4) x rate (scale 4)
+        return BigDecimal.valueOf(weightedRate, 2 * ColumnarMarket.RATE_SCALE)
+                .setScale(scale, BigDecimal.ROUND_UNNECESSARY);
+    }
+
+    private static long ceilDiv(long dividend, long divisor) {
+        return -Math.floorDiv(-dividend, divisor);
+    }
+}
@@ -0,0 +1,310 @@
+package org.zopa.loanprovider;
+
+import java.math.BigDecimal;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * Market data stored by columns (struct of arrays) with primitive values:
+ * rate in basis points (scale 4) and available in pence (scale 2).
+ * The scale each rate was given with is kept too, as it changes the monthly rate (rate / 12 is rounded at that scale).
+ * Lender names are interned in a dictionary, each lender only keeps the index of its name.
+ * Lenders are sorted once on build with the same order as {@link LoanComparator#byRate}.
+ * Immutable once built.
+ */
+public class ColumnarMarket {
+
+    static final int RATE_SCALE = 4;
+    static final int AMOUNT_SCALE = 2;
+
+    private final String[] names;
+    private final int[] nameIndexes;
+    private final long[] rates;
+    private final byte[] rateScales;
+    private final long[] available;
+    private final long totalAvailable;
+
+    private ColumnarMarket(String[] names, int[] nameIndexes, long[] rates, byte[] rateScales, long[] available) {
+        this.names = names;
+        this.nameIndexes = nameIndexes;
+        this.rates = rates;
+        this.rateScales = rateScales;
+        this.available = available;
+        long total = 0;
+        for (long value : available) {
+            total = Math.addExact(total, value);
+        }
+        this.totalAvailable = total;
+    }
+
+    public static ColumnarMarket of(List<LenderData> marketData) {
+        Builder builder = new Builder(marketData.size());
+        marketData.forEach(builder::add);
+        return builder.build();
+    }
+
+    /**
+     * Columns already sorted (e.g. loaded from a {@link BinaryMarketFile}): not sorted again.
+     */
+    static ColumnarMarket ofSorted(String[] names, int[] nameIndexes, long[] rates, byte[] rateScales, long[] available) {
+        return new ColumnarMarket(names, nameIndexes, rates, rateScales, available);
+    }
+
+    public int size() {
+        return rates.length;
+    }
+
+    public String getName(int index) {
+        return names[nameIndexes[index]];
+    }
+
+    /**
+     * @param index
+     * @return rate in basis points
+     */
+    public long getRate(int index) {
+        return rates[index];
+    }
+
+    /**
+     * @param index
+     * @return scale the rate was given with (0.0700 is 700 basis points with scale 4, 0.07 the same with scale 2)
+     */
+    public int getRateScale(int index) {
+        return rateScales[index];
+    }
+
+    /**
+     * @param index
+     * @return available in pence
+     */
+    public long getAvailable(int index) {
+        return available[index];
+    }
+
+    /**
+     * @return total available in pence
+     */
+    public long getTotalAvailable() {
+        return totalAvailable;
+    }
+
+    int getNameIndex(int index) {
+        return nameIndexes[index];
+    }
+
+    String getDictionaryName(int nameIndex) {
+        return names[nameIndex];
+    }
+
+    /**
+     * Read-only view of the lenders as {@link LenderData} (created on each access), cheapest first.
+     * Rates keep the scale they were given with, amounts are written without trailing zeros (64000 pence is 640).
+     *
+     * @return
+     */
+    public List<LenderData> asList() {
+        return new LenderList();
+    }
+
+    /**
+     * Number of different lender names stored.
+     *
+     * @return
+     */
+    public int getNamesCount() {
+        return names.length;
+    }
+
+    static long toRate(BigDecimal rate) {
+        try {
+            return rate.movePointRight(RATE_SCALE).longValueExact();
+        } catch (ArithmeticException e) {
+            throw new ArithmeticException(format("Rate {0} can not be stored in basis points", rate.toString()));
+        }
+    }
+
+    static long toAmount(BigDecimal amount) {
+        try {
+            return amount.movePointRight(AMOUNT_SCALE).longValueExact();
+        } catch (ArithmeticException e) {
+            throw new ArithmeticException(format("Amount {0} can not be stored in pence", amount.toString()));
+        }
+    }
+
+    /**
+     * @param rate
+     * @return scale of the rate, when it can be stored
+     * @throws ArithmeticException when the scale does not fit a byte
+     */
+    static byte toRateScale(BigDecimal rate) {
+        if (rate.scale() < Byte.MIN_VALUE || rate.scale() > Byte.MAX_VALUE) {
+            throw new ArithmeticException(format("Rate {0} can not be stored in basis points", rate.toString()));
+        }
+        return (byte) rate.scale();
+    }
+
+    /**
+     * Scale of a rate in basis points once trailing zeros are removed (750 is 0.075, scale 3).
+     */
+    static byte scaleOf(long rate) {
+        return (byte) withoutTrailingZeros(BigDecimal.valueOf(rate, RATE_SCALE)).scale();
+    }
+
+    static BigDecimal fromRate(long rate, int scale) {
+        return BigDecimal.valueOf(rate, RATE_SCALE).setScale(scale, BigDecimal.ROUND_UNNECESSARY);
+    }
+
+    static BigDecimal fromAmount(long amount) {
+        return withoutTrailingZeros(BigDecimal.valueOf(amount, AMOUNT_SCALE));
+    }
+
+    private static BigDecimal withoutTrailingZeros(BigDecimal value) {
+        BigDecimal stripped = value.stripTrailingZeros();
+        return stripped.scale() < 0 ? stripped.setScale(0) : stripped;
+    }
+
+    private class LenderList extends AbstractList<LenderData> implements RandomAccess {
+
+        @Override
+        public LenderData get(int index) {
+            return new LenderData(getName(index), fromRate(rates[index], rateScales[index]), fromAmount(available[index]));
+        }
+
+        @Override
+        public int size() {
+            return rates.length;
+        }
+    }
+
+    /**
+     * Collect lenders column by column. Names are interned while adding.
+     */
+    public static class Builder {
+
+        private final Map<String, Integer> nameDictionary = new HashMap<>();
+        private final List<String> names = new ArrayList<>();
+        private int[] nameIndexes;
+        private long[] rates;
+        private byte[] rateScales;
+        private long[] available;
+        private int size;
+
+        public Builder() {
+            this(16);
+        }
+
+        public Builder(int capacity) {
+            nameIndexes = new int[Math.max(capacity, 1)];
+            rates = new long[nameIndexes.length];
+            rateScales = new byte[nameIndexes.length];
+            available = new long[nameIndexes.length];
+        }
+
+        public Builder add(LenderData lenderData) {
+            return add(lenderData.getName(), toRate(lenderData.getRate()), toRateScale(lenderData.getRate()), toAmount(lenderData.getAvailable()));
+        }
+
+        /**
+         * Rate kept without trailing zeros.
+         *
+         * @param name
+         * @param rate      in basis points
+         * @param available in pence
+         * @return
+         */
+        public Builder add(String name, long rate, long available) {
+            return add(name, rate, scaleOf(rate), available);
+        }
+
+        private Builder add(String name, long rate, byte rateScale, long available) {
+            if (size == rates.length) {
+                int capacity = size * 2;
+                this.nameIndexes = Arrays.copyOf(nameIndexes, capacity);
+                this.rates = Arrays.copyOf(rates, capacity);
+                this.rateScales = Arrays.copyOf(rateScales, capacity);
+                this.available = Arrays.copyOf(this.available, capacity);
+            }
+            Integer nameIndex = nameDictionary.get(name);
+            if (nameIndex == null) {
+                nameIndex = names.size();
+                nameDictionary.put(name, nameIndex);
+                names.add(name);
+            }
+            nameIndexes[size] = nameIndex;
+            rates[size] = rate;
+            rateScales[size] = rateScale;
+            this.available[size] = available;
+            size++;
+            return this;
+        }
+
+        /**
+         * Sort the lenders by rate (and available) and build the columns in that order.
+         *
+         * @return
+         */
+        public ColumnarMarket build() {
+            int[] order = new int[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            heapSort(order);
+
+            int[] sortedNames = new int[size];
+            long[] sortedRates = new long[size];
+            byte[] sortedRateScales = new byte[size];
+            long[] sortedAvailable = new long[size];
+            for (int i = 0; i < size; i++) {
+                sortedNames[i] = nameIndexes[order[i]];
+                sortedRates[i] = rates[order[i]];
+                sortedRateScales[i] = rateScales[order[i]];
+                sortedAvailable[i] = available[order[i]];
+            }
+            return new ColumnarMarket(names.toArray(new String[0]), sortedNames, sortedRates, sortedRateScales, sortedAvailable);
+        }
+
+        // Primitive sort of the positions: no boxing even for millions of lenders
+        private void heapSort(int[] order) {
+            for (int i = order.length / 2 - 1; i >= 0; i--) {
+                siftDown(order, i, order.length);
+            }
+            for (int end = order.length - 1; end > 0; end--) {
+                swap(order, 0, end);
+                siftDown(order, 0, end);
+            }
+        }
+
+        private void siftDown(int[] order, int root, int end) {
+            while (2 * root + 1 < end) {
+                int child = 2 * root + 1;
+                if (child + 1 < end && compare(order[child], order[child + 1]) < 0) {
+                    child++;
+                }
+                if (compare(order[root], order[child]) >= 0) {
+                    return;
+                }
+                swap(order, root, child);
+                root = child;
+            }
+        }
+
+        private int compare(int left, int right) {
+            int byRate = Long.compare(rates[left], rates[right]);
+            return byRate != 0 ? byRate : Long.compare(available[left], available[right]);
+        }
+
+        private static void swap(int[] order, int i, int j) {
+            int tmp = order[i];
+            order[i] = order[j];
+            order[j] = tmp;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package org.zopa.loanprovider;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * Binary encoding of BigDecimal values: scale, then the unscaled value (two's-complement bytes, length prefixed).
+ * Exact, so a value read back is equal (including scale) to the value written.
+ * Values read are bounded (scale and unscaled length), so data from a file or a peer can not make the arithmetic
+ * on them unbounded.
+ */
+final class DecimalCodec {
+
+    static final int MAX_SCALE = 64;
+    static final int MAX_LENGTH = 64;
+
+    private DecimalCodec() {
+    }
+
+    /**
+     * @param out
+     * @param value
+     * @throws IOException when the value is out of the bounds {@link #read} accepts
+     */
+    static void write(DataOutput out, BigDecimal value) throws IOException {
+        if (!fits(value)) {
+            throw new IOException("Invalid decimal value");
+        }
+        byte[] unscaled = value.unscaledValue().toByteArray();
+        out.writeInt(value.scale());
+        out.writeShort(unscaled.length);
+        out.write(unscaled);
+    }
+
+    /**
+     * @param value
+     * @return true when the value can be written (and read back)
+     */
+    static boolean fits(BigDecimal value) {
+        return Math.abs(value.scale()) <= MAX_SCALE && value.unscaledValue().bitLength() / 8 + 1 <= MAX_LENGTH;
+    }
+
+    /**
+     * @param in
+     * @return
+     * @throws IOException when the scale is not between -{@value #MAX_SCALE} and {@value #MAX_SCALE}
+     *                     or the unscaled value is empty or longer than {@value #MAX_LENGTH} bytes
+     */
+    static BigDecimal read(DataInput in) throws IOException {
+        int scale = in.readInt();
+        int length = in.readUnsignedShort();
+        if (scale < -MAX_SCALE || scale > MAX_SCALE || length == 0 || length > MAX_LENGTH) {
+            throw new IOException("Invalid decimal value");
+        }
+        byte[] unscaled = new byte[length];
+        in.readFully(unscaled);
+        return new BigDecimal(new BigInteger(unscaled), scale);
+    }
+}
@@ -0,0 +1,548 @@
+package org.zopa.loanprovider;
+
+import com.google.common.io.CountingInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.zip.CRC32;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * Append-only binary log of lender updates applied on top of a market data file (base snapshot).
+ * Updates are cheap sequential appends instead of rewriting the whole market file,
+ * and start-up is the snapshot load plus the replay of the log (see {@link FileReader#getMarketData(String, String)}).
+ *
+ * Lenders are identified by name. Records: lender added, rate changed, available debited, available credited.
+ * Records are checked against the market before they are appended (known lender, positive rates and amounts,
+ * no debit over the available, names without commas or new lines and not over 64KB, and rates in basis points
+ * and amounts in pence when the snapshot is binary), so a log written here always replays and compacts.
+ * Each record is flushed to the file when appended, so it survives a crash of the process; opened with sync
+ * it is also forced to the disk (survives a crash of the machine, each append costs a disk write).
+ * A record partially written at the end of the log is ignored, and removed when the log is opened again.
+ *
+ * The log header keeps the size and checksum of the snapshot it applies to (its base). A log whose base is not
+ * the current snapshot is ignored (and emptied when opened): it was already compacted into it, or the snapshot was replaced.
+ * Compaction writes the replayed market as the new base snapshot (same format, CSV or binary) and a new empty log
+ * for it. It is done every {@code compactionThreshold} records. The snapshot is replaced first and then the log:
+ * a crash between both moves leaves the old log with the old base, which is ignored.
+ * Not thread-safe: a single writer is expected.
+ */
+public class DeltaLog implements Closeable {
+
+    public static final String EXTENSION = ".delta";
+
+    private static final int MAGIC = 0x4C50444C; // LPDL
+    private static final byte VERSION = 2;
+    private static final int HEADER_SIZE = 4 + 1 + 8 + 4;
+
+    private static final int MAX_NAME_LENGTH = 0xFFFF;
+
+    private static final byte LENDER_ADDED = 1;
+    private static final byte RATE_CHANGED = 2;
+    private static final byte DEBITED = 3;
+    private static final byte CREDITED = 4;
+
+    private final Path snapshotFile;
+    private final Path logFile;
+    private final int compactionThreshold;
+    private final boolean sync;
+    private FileOutputStream file;
+    private DataOutputStream out;
+    private MarketState market;
+    private int records;
+
+    private DeltaLog(Path snapshotFile, Path logFile, int compactionThreshold, boolean sync) throws IOException {
+        this.snapshotFile = snapshotFile;
+        this.logFile = logFile;
+        this.compactionThreshold = compactionThreshold;
+        this.sync = sync;
+        this.records = openLog();
+    }
+
+    /**
+     * Open the log of a market data file for appending ({@link #pathFor} location), creating it when needed.
+     * Records are flushed to the file, not forced to the disk.
+     *
+     * @param snapshotFile       market data file
+     * @param compactionThreshold records appended before a compaction, 0 to disable it
+     * @return
+     * @throws IOException
+     */
+    public static DeltaLog open(String snapshotFile, int compactionThreshold) throws IOException {
+        return open(snapshotFile, compactionThreshold, false);
+    }
+
+    /**
+     * @param snapshotFile        market data file
+     * @param compactionThreshold records appended before a compaction, 0 to disable it
+     * @param sync                force each record to the disk
+     * @return
+     * @throws IOException
+     */
+    public static DeltaLog open(String snapshotFile, int compactionThreshold, boolean sync) throws IOException {
+        return new DeltaLog(Paths.get(snapshotFile), pathFor(snapshotFile), compactionThreshold, sync);
+    }
+
+    /**
+     * @param snapshotFile market data file
+     * @return path of its delta log
+     */
+    public static Path pathFor(String snapshotFile) {
+        return Paths.get(snapshotFile + EXTENSION);
+    }
+
+    /**
+     * Read the market data file (CSV or {@link BinaryMarketFile}, memory-mapped) and replay its delta log,
+     * if there is one for this snapshot.
+     *
+     * @param snapshotFile market data file
+     * @return
+     * @throws IOException
+     */
+    public static List<LenderData> load(String snapshotFile) throws IOException {
+        List<LenderData> marketData = readSnapshot(snapshotFile);
+        Path logFile = pathFor(snapshotFile);
+        return appliesTo(logFile, Paths.get(snapshotFile)) ? replay(marketData, logFile) : marketData;
+    }
+
+    /**
+     * @param logFile
+     * @param snapshotFile
+     * @return true when the log exists and its base is the snapshot given
+     * @throws IOException
+     */
+    static boolean appliesTo(Path logFile, Path snapshotFile) throws IOException {
+        Base base = Base.of(logFile);
+        return base != null && base.equals(Base.of(snapshotFile.toFile().length(), checksumOf(snapshotFile)));
+    }
+
+    private static List<LenderData> readSnapshot(String snapshotFile) throws IOException {
+        if (BinaryMarketFile.isBinary(snapshotFile)) {
+            return new ArrayList<>(BinaryMarketFile.load(snapshotFile).asList());
+        }
+        return MappedFileReader.getMarketData(snapshotFile);
+    }
+
+    /**
+     * @param lenderData
+     * @throws IllegalArgumentException when the lender exists, its name has commas or new lines or its rate
+     *                                  is not positive or its available is negative
+     * @throws IOException
+     */
+    public void lenderAdded(LenderData lenderData) throws IOException {
+        append(LENDER_ADDED, lenderData.getName(), lenderData.getRate(), lenderData.getAvailable());
+    }
+
+    /**
+     * @param name
+     * @param rate
+     * @throws IllegalArgumentException when the lender is not found (or repeated) or the rate is not positive
+     * @throws IOException
+     */
+    public void rateChanged(String name, BigDecimal rate) throws IOException {
+        append(RATE_CHANGED, name, rate, null);
+    }
+
+    /**
+     * @param name
+     * @param amount
+     * @throws IllegalArgumentException when the lender is not found (or repeated), the amount is not positive
+     *                                  or it is over the available
+     * @throws IOException
+     */
+    public void debited(String name, BigDecimal amount) throws IOException {
+        append(DEBITED, name, amount, null);
+    }
+
+    /**
+     * @param name
+     * @param amount
+     * @throws IllegalArgumentException when the lender is not found (or repeated) or the amount is not positive
+     * @throws IOException
+     */
+    public void credited(String name, BigDecimal amount) throws IOException {
+        append(CREDITED, name, amount, null);
+    }
+
+    /**
+     * Records appended since the last compaction.
+     *
+     * @return
+     */
+    public int size() {
+        return records;
+    }
+
+    /**
+     * Force the records to the disk (they are already flushed to the file on each append).
+     *
+     * @throws IOException
+     */
+    public void flush() throws IOException {
+        out.flush();
+        file.getChannel().force(false);
+    }
+
+    /**
+     * Write the replayed market as the new base snapshot and a new empty log for it.
+     * The log is only closed once both are written, so it can still be appended when writing them fails.
+     *
+     * @throws IOException
+     */
+    public void compact() throws IOException {
+        List<LenderData> marketData = market.getLenders();
+        boolean binary = BinaryMarketFile.isBinary(snapshotFile.toString());
+
+        Path snapshotTmp = Paths.get(snapshotFile + ".tmp");
+        if (binary) {
+            BinaryMarketFile.write(ColumnarMarket.of(marketData), snapshotTmp.toString());
+        } else {
+            try (BufferedWriter writer = Files.newBufferedWriter(snapshotTmp, StandardCharsets.UTF_8)) {
+                writer.write("Lender,Rate,Available");
+                writer.newLine();
+                for (LenderData lenderData : marketData) {
+                    writer.write(lenderData.getName() + "," + lenderData.getRate().toPlainString() + "," + lenderData.getAvailable().toPlainString());
+                    writer.newLine();
+                }
+            }
+        }
+        Path logTmp = Paths.get(logFile + ".tmp");
+        try (DataOutputStream emptyLog = new DataOutputStream(Files.newOutputStream(logTmp))) {
+            writeHeader(emptyLog, Base.of(Files.size(snapshotTmp), checksumOf(snapshotTmp)));
+        }
+        out.close();
+        Files.move(snapshotTmp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        // A crash here leaves the old log, whose base is not the new snapshot: it is ignored
+        Files.move(logTmp, logFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        records = openLog();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    /**
+     * Apply the log to the market data given (whatever its base is). The list is not modified.
+     * Updated lenders keep their position, new lenders are added at the end.
+     *
+     * @param marketData base snapshot
+     * @param logFile
+     * @return market data updated
+     * @throws IOException
+     */
+    public static List<LenderData> replay(List<LenderData> marketData, Path logFile) throws IOException {
+        MarketState state = new MarketState(marketData, false);
+        try (InputStream in = Files.newInputStream(logFile)) {
+            readLog(in, state);
+        } catch (ParseException e) {
+            throw new RuntimeException(e.getMessage());
+        }
+        return state.getLenders();
+    }
+
+    /**
+     * Read the records of the log and apply them, stopping at a partially written record.
+     *
+     * @return length of the complete records (header included)
+     */
+    private static long readLog(InputStream log, MarketState state) throws IOException, ParseException {
+        CountingInputStream counter = new CountingInputStream(new BufferedInputStream(log));
+        DataInputStream in = new DataInputStream(counter);
+        if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+            throw new ParseException("Error reading delta log. Invalid header", 0);
+        }
+        // Base of the log, checked before reading it
+        in.readLong();
+        in.readInt();
+        long complete = counter.getCount();
+        long recordNumber = 1;
+        try {
+            while (true) {
+                int type = in.read();
+                if (type < 0) {
+                    break;
+                }
+                if (type < LENDER_ADDED || type > CREDITED) {
+                    throw parseError("Unknown record type", recordNumber);
+                }
+                String name = in.readUTF();
+                BigDecimal first = DecimalCodec.read(in);
+                BigDecimal second = type == LENDER_ADDED ? DecimalCodec.read(in) : null;
+                try {
+                    state.apply((byte) type, name, first, second);
+                } catch (IllegalArgumentException e) {
+                    throw parseError(e.getMessage(), recordNumber);
+                }
+                recordNumber++;
+                complete = counter.getCount();
+            }
+        } catch (EOFException e) {
+            // Partially written record, ignored
+        }
+        return complete;
+    }
+
+    /**
+     * Create the log when needed (or when its base is not the current snapshot), drop a partially written record
+     * at the end, replay it and open it for appending.
+     *
+     * @return number of complete records
+     */
+    private int openLog() throws IOException {
+        if (!appliesTo(logFile, snapshotFile)) {
+            try (DataOutputStream header = new DataOutputStream(Files.newOutputStream(logFile))) {
+                writeHeader(header, Base.of(Files.size(snapshotFile), checksumOf(snapshotFile)));
+            }
+        }
+        market = new MarketState(readSnapshot(snapshotFile.toString()), BinaryMarketFile.isBinary(snapshotFile.toString()));
+        long complete;
+        try (InputStream in = Files.newInputStream(logFile)) {
+            complete = readLog(in, market);
+        } catch (ParseException e) {
+            throw new RuntimeException(e.getMessage());
+        }
+        try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.WRITE)) {
+            channel.truncate(complete);
+        }
+        file = new FileOutputStream(logFile.toFile(), true);
+        out = new DataOutputStream(new BufferedOutputStream(file));
+        return market.getRecords();
+    }
+
+    /**
+     * Check the record against the market, write it and flush it (and force it to the disk with sync).
+     */
+    private void append(byte type, String name, BigDecimal first, BigDecimal second) throws IOException {
+        if (!DecimalCodec.fits(first) || (second != null && !DecimalCodec.fits(second))) {
+            throw new IllegalArgumentException(format("Lender {0} values are out of range", name));
+        }
+        // Checked before writing anything: writeUTF fails after writing the type otherwise
+        if (utfLength(name) > MAX_NAME_LENGTH) {
+            throw new IllegalArgumentException(format("Lender name {0} is too long", name.substring(0, 16) + "..."));
+        }
+        LenderData updated = market.check(type, name, first, second);
+        out.writeByte(type);
+        out.writeUTF(name);
+        DecimalCodec.write(out, first);
+        if (type == LENDER_ADDED) {
+            DecimalCodec.write(out, second);
+        }
+        out.flush();
+        if (sync) {
+            file.getChannel().force(false);
+        }
+        market.put(updated);
+        records++;
+        if (compactionThreshold > 0 && records >= compactionThreshold) {
+            compact();
+        }
+    }
+
+    /**
+     * Length of the name written with {@link DataOutputStream#writeUTF} (modified UTF-8).
+     */
+    private static long utfLength(String name) {
+        long length = 0;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            length += c >= 0x0001 && c <= 0x007F ? 1 : c > 0x07FF ? 3 : 2;
+        }
+        return length;
+    }
+
+    private static void writeHeader(DataOutputStream out, Base base) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeLong(base.size);
+        out.writeInt(base.checksum);
+    }
+
+    private static int checksumOf(Path file) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                crc.update(buffer, 0, read);
+            }
+        }
+        return (int) crc.getValue();
+    }
+
+    private static ParseException parseError(String message, long recordNumber) {
+        return new ParseException(format("Error reading delta log. {0} (record {1})", message, String.valueOf(recordNumber)), 0);
+    }
+
+    /**
+     * Snapshot a log applies to: size and checksum of the file.
+     */
+    private static final class Base {
+
+        private final long size;
+        private final int checksum;
+
+        private Base(long size, int checksum) {
+            this.size = size;
+            this.checksum = checksum;
+        }
+
+        static Base of(long size, int checksum) {
+            return new Base(size, checksum);
+        }
+
+        /**
+         * @return base in the header of the log, or null when there is no (complete and valid) header
+         */
+        static Base of(Path logFile) throws IOException {
+            if (!Files.exists(logFile) || Files.size(logFile) < HEADER_SIZE) {
+                return null;
+            }
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(logFile)))) {
+                if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+                    return null;
+                }
+                return new Base(in.readLong(), in.readInt());
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Base)) {
+                return false;
+            }
+            Base other = (Base) o;
+            return size == other.size && checksum == other.checksum;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(size, checksum);
+        }
+    }
+
+    /**
+     * Lenders of the market by name, with the records applied.
+     * With a binary snapshot, lenders must also fit its columns (see {@link ColumnarMarket}).
+     */
+    private static final class MarketState {
+
+        private final List<LenderData> lenders;
+        private final Map<String, Integer> positions = new HashMap<>();
+        private final boolean columnar;
+        private int records;
+
+        MarketState(List<LenderData> marketData, boolean columnar) {
+            this.lenders = new ArrayList<>(marketData);
+            this.columnar = columnar;
+            for (int i = 0; i < lenders.size(); i++) {
+                // Repeated names can not be updated
+                positions.merge(lenders.get(i).getName(), i, (first, other) -> -1);
+            }
+        }
+
+        /**
+         * @return the lender as the record leaves it
+         * @throws IllegalArgumentException when the record can not be applied
+         */
+        LenderData check(byte type, String name, BigDecimal first, BigDecimal second) {
+            LenderData lenderData = checkRecord(type, name, first, second);
+            if (columnar) {
+                try {
+                    ColumnarMarket.toRate(lenderData.getRate());
+                    ColumnarMarket.toRateScale(lenderData.getRate());
+                    ColumnarMarket.toAmount(lenderData.getAvailable());
+                } catch (ArithmeticException e) {
+                    throw new IllegalArgumentException(format("Lender {0} values do not fit the binary market data file", name));
+                }
+            }
+            return lenderData;
+        }
+
+        private LenderData checkRecord(byte type, String name, BigDecimal first, BigDecimal second) {
+            Integer position = positions.get(name);
+            if (type == LENDER_ADDED) {
+                if (position != null) {
+                    throw new IllegalArgumentException(format("Lender {0} already exists", name));
+                }
+                if (name.isEmpty() || name.contains(",") || name.contains("\n") || name.contains("\r")) {
+                    throw new IllegalArgumentException(format("Lender name {0} must not be empty nor have commas or new lines", name));
+                }
+                checkPositive(name, "rate", first);
+                if (second.signum() < 0) {
+                    throw new IllegalArgumentException(format("Lender {0} available must not be negative", name));
+                }
+                return new LenderData(name, first, second);
+            }
+            if (position == null || position < 0) {
+                throw new IllegalArgumentException(format("Lender {0} not found or repeated", name));
+            }
+            LenderData current = lenders.get(position);
+            if (type == RATE_CHANGED) {
+                checkPositive(name, "rate", first);
+                return new LenderData(name, first, current.getAvailable());
+            }
+            checkPositive(name, "amount", first);
+            BigDecimal available = type == DEBITED ? current.getAvailable().subtract(first) : current.getAvailable().add(first);
+            if (available.signum() < 0) {
+                throw new IllegalArgumentException(format("Lender {0} has not enough available", name));
+            }
+            return new LenderData(name, current.getRate(), available);
+        }
+
+        void apply(byte type, String name, BigDecimal first, BigDecimal second) {
+            put(check(type, name, first, second));
+        }
+
+        void put(LenderData lenderData) {
+            Integer position = positions.get(lenderData.getName());
+            if (position == null) {
+                positions.put(lenderData.getName(), lenders.size());
+                lenders.add(lenderData);
+            } else {
+                lenders.set(position, lenderData);
+            }
+            records++;
+        }
+
+        List<LenderData> getLenders() {
+            return new ArrayList<>(lenders);
+        }
+
+        int getRecords() {
+            return records;
+        }
+
+        private static void checkPositive(String name, String value, BigDecimal amount) {
+            if (amount.signum() <= 0) {
+                throw new IllegalArgumentException(format("Lender {0} {1} must be positive", name, value));
+            }
+        }
+    }
+}
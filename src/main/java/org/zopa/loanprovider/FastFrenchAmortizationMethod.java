@@ -0,0 +1,77 @@
+package org.zopa.loanprovider;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * Constant quote calculated with primitive arithmetic.
+ * Gives the same pence-level results as {@link FrenchAmortizationMethod}:
+ * monthly repayment and total repayment (monthly x months) rounded up to 2 decimals are always equal.
+ *
+ * Rounding:
+ * 1. Monthly rate is rate / 12 rounded up at the scale of the rate (as the French method does), with long arithmetic.
+ * 2. The annuity factor is calculated in double (log1p/expm1), with a relative error below {@link #RELATIVE_ERROR}.
+ * The French method rounds the factor up at scale (rate scale x (months + 1)), that is also added to the error bound.
+ * 3. The payment is returned with {@link #SCALE} decimals (half up).
+ * When the error bound of 2. and 3. reaches a pence boundary (for the monthly or for the total repayment),
+ * the exact BigDecimal calculation is used instead. Same for rates or amounts not fitting in a long/double.
+ */
+public class FastFrenchAmortizationMethod implements AmortizationMethod {
+
+    static final int SCALE = 10;
+    static final double RELATIVE_ERROR = 1e-11;
+
+    private static final double UNSCALE = 1e10;
+    private static final double MAX_PAYMENT = 1e5;
+    private static final double[] POWERS_OF_TEN = {1, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18};
+
+    private final AmortizationMethod exactMethod = new FrenchAmortizationMethod();
+
+    public BigDecimal calculateMonthlyPayment(BigDecimal rate, BigDecimal amount, int months) throws ArithmeticException {
+        BigInteger unscaledRate = rate.unscaledValue();
+        if (unscaledRate.bitLength() < 63 && rate.scale() >= 0 && rate.scale() < POWERS_OF_TEN.length) {
+            double payment = calculateMonthlyPayment(unscaledRate.longValue(), rate.scale(), amount.doubleValue(), months);
+            if (!Double.isNaN(payment)) {
+                return BigDecimal.valueOf(Math.round(payment * UNSCALE), SCALE);
+            }
+        }
+        return exactMethod.calculateMonthlyPayment(rate, amount, months);
+    }
+
+    /**
+     * Allocation free calculation.
+     *
+     * @param unscaledRate
+     * @param rateScale
+     * @param amount
+     * @param months
+     * @return the monthly payment, or NaN when it can not be guaranteed at pence level (exact method must be used)
+     */
+    public double calculateMonthlyPayment(long unscaledRate, int rateScale, double amount, int months) {
+        long unscaledMonthlyRate = -Math.floorDiv(-unscaledRate, 12);
+        if (unscaledMonthlyRate <= 0 || months <= 0 || amount <= 0) {
+            return Double.NaN;
+        }
+        double monthlyRate = unscaledMonthlyRate / POWERS_OF_TEN[rateScale];
+        double powMinusOne = Math.expm1(months * Math.log1p(monthlyRate));
+        double payment = amount * monthlyRate * (powMinusOne + 1) / powMinusOne;
+
+        if (!(payment < MAX_PAYMENT)) {
+            return Double.NaN;
+        }
+        // Absolute error of the returned value: calculation + rounding to SCALE
+        double error = payment * RELATIVE_ERROR + amount * Math.pow(10, -rateScale * (months + 1.0)) + 0.5 / UNSCALE;
+        if (isPenceSafe(payment, error) && isPenceSafe(payment * months, error * months)) {
+            return payment;
+        }
+        return Double.NaN;
+    }
+
+    /**
+     * True when any value in [value - error, value + error] is rounded up to the same pence.
+     */
+    private static boolean isPenceSafe(double value, double error) {
+        return Math.ceil((value - error) * 100) == Math.ceil((value + error) * 100);
+    }
+}
@@ -0,0 +1,36 @@
+package org.zopa.loanprovider;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+/**
+ * Fewest lenders for the loan: lenders with more available first (cheapest first for the same available),
+ * optionally only the ones with a rate up to a cap.
+ * The market is indexed once in {@link LoanComparator#byAvailable} order with its cumulative available,
+ * so the lenders taken are found with a binary search.
+ */
+public class FewestLendersStrategy implements MatchingStrategy {
+
+    private final BigDecimal rateCap;
+
+    public FewestLendersStrategy() {
+        this(null);
+    }
+
+    /**
+     * @param rateCap highest rate taken, or null for any rate
+     */
+    public FewestLendersStrategy(BigDecimal rateCap) {
+        this.rateCap = rateCap;
+    }
+
+    @Override
+    public Matcher index(MarketSnapshot market) {
+        LenderData[] lenders = new LenderData[ProRataStrategy.lendersUnder(market, rateCap)];
+        for (int i = 0; i < lenders.length; i++) {
+            lenders[i] = market.get(i);
+        }
+        Arrays.sort(lenders, LoanComparator.byAvailable);
+        return new PrefixMatcher(lenders);
+    }
+}
@@ -0,0 +1,32 @@
+package org.zopa.loanprovider;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.stream.Stream;
+
+/**
+ * CSV market data file read line by line (see {@link FileReader#streamMarketData}). Lenders in file order.
+ */
+public class FileMarketDataSource extends AbstractMarketDataSource {
+
+    private final String filePath;
+
+    public FileMarketDataSource(String filePath) {
+        this.filePath = filePath;
+    }
+
+    public FileMarketDataSource(String filePath, int batchSize, int capacity, Executor executor) {
+        super(batchSize, capacity, executor);
+        this.filePath = filePath;
+    }
+
+    @Override
+    protected Stream<LenderData> open() throws IOException {
+        return FileReader.streamMarketData(filePath);
+    }
+
+    @Override
+    public boolean isSorted() {
+        return false;
+    }
+}
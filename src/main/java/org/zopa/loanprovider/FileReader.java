@@ -3,10 +3,13 @@ package org.zopa.loanprovider;
 
 import java.io.*;
 import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.text.ParseException;
 import java.util.List;
 import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Reader component to map a lenders list.
@@ -18,13 +21,14 @@ public class FileReader {
     /**
      * Read data from file I/O saved on filesystem.
      * Because it is a simple console app, assumes it wouldn't necessary use some Async and non-Blocking I/O implementation.
-     * However in case of handle lots of data and/or a different data source async mechanics will be a must.
+     * For lots of data and/or a different data source see {@link MarketDataSource} (async, in batches).
      *
      * @param filePath
      * @return
      * @throws IOException
      */
     public static List<LenderData> getMarketData(String filePath) throws IOException {
+        long start = QuoteMetrics.start();
         List<LenderData> lenders;
         File file = new File(filePath);
         InputStream inputFS = new FileInputStream(file);
@@ -34,9 +38,46 @@ public class FileReader {
                 .map(mapToLender)
                 .collect(Collectors.toList());
         buffer.close();
+        QuoteMetrics.recordSince(QuoteMetrics.FILE_READ, start);
         return lenders;
     }
 
+    /**
+     * Lazy stream of the lenders in the file: lines are read and parsed as the stream is consumed.
+     * The stream must be closed to close the file.
+     *
+     * @param filePath
+     * @return
+     * @throws IOException
+     */
+    public static Stream<LenderData> streamMarketData(String filePath) throws IOException {
+        BufferedReader buffer = new BufferedReader(new InputStreamReader(new FileInputStream(filePath)));
+        return buffer.lines()
+                .skip(1) //Skip Header
+                .map(mapToLender)
+                .onClose(() -> {
+                    try {
+                        buffer.close();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+    }
+
+    /**
+     * Read the market data file (base snapshot) and replay its delta log on top of it (when the log is for this snapshot).
+     *
+     * @param filePath
+     * @param deltaLogPath see {@link DeltaLog}
+     * @return
+     * @throws IOException
+     */
+    public static List<LenderData> getMarketData(String filePath, String deltaLogPath) throws IOException {
+        List<LenderData> marketData = getMarketData(filePath);
+        Path logFile = Paths.get(deltaLogPath);
+        return DeltaLog.appliesTo(logFile, Paths.get(filePath)) ? DeltaLog.replay(marketData, logFile) : marketData;
+    }
+
     private static final ThrowingFunction<String, LenderData> mapToLender = (line) -> {
         String[] values = line.split(COMMA);
         if (values.length == 3) {
@@ -0,0 +1,21 @@
+package org.zopa.loanprovider;
+
+/**
+ * JMX view of a {@link Histogram}.
+ */
+public interface HistogramMBean {
+
+    String getName();
+
+    long getCount();
+
+    double getMean();
+
+    long getMax();
+
+    long getMedian();
+
+    long get99thPercentile();
+
+    long get999thPercentile();
+}
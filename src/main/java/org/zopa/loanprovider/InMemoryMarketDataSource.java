@@ -0,0 +1,41 @@
+package org.zopa.loanprovider;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Market data already in memory: a list (delivered in its order) or a {@link MarketSnapshot} (delivered sorted).
+ */
+public class InMemoryMarketDataSource extends AbstractMarketDataSource {
+
+    private final Iterable<LenderData> lenders;
+    private final boolean sorted;
+
+    public InMemoryMarketDataSource(List<LenderData> marketData) {
+        this.lenders = marketData;
+        this.sorted = false;
+    }
+
+    public InMemoryMarketDataSource(MarketSnapshot market) {
+        this.lenders = market;
+        this.sorted = true;
+    }
+
+    public InMemoryMarketDataSource(MarketSnapshot market, int batchSize, int capacity, Executor executor) {
+        super(batchSize, capacity, executor);
+        this.lenders = market;
+        this.sorted = true;
+    }
+
+    @Override
+    protected Stream<LenderData> open() {
+        return StreamSupport.stream(lenders.spliterator(), false);
+    }
+
+    @Override
+    public boolean isSorted() {
+        return sorted;
+    }
+}
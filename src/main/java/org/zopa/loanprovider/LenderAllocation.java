@@ -0,0 +1,49 @@
+package org.zopa.loanprovider;
+
+import java.util.Arrays;
+
+/**
+ * Lenders collected for a quote, as parallel arrays: position of the lender in the market and amount taken (pence).
+ * Reused between quotes (cleared, arrays only grow), so collecting lenders does not allocate.
+ * Not thread-safe: {@link LoanProcessor} keeps one per thread.
+ */
+final class LenderAllocation {
+
+    private int[] lenders = new int[64];
+    private long[] amounts = new long[64];
+    private int size;
+
+    void clear() {
+        size = 0;
+    }
+
+    void add(int lender, long amount) {
+        if (size == lenders.length) {
+            lenders = Arrays.copyOf(lenders, size * 2);
+            amounts = Arrays.copyOf(amounts, size * 2);
+        }
+        lenders[size] = lender;
+        amounts[size] = amount;
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @param i
+     * @return position of the lender in the market
+     */
+    int getLender(int i) {
+        return lenders[i];
+    }
+
+    /**
+     * @param i
+     * @return amount taken from the lender in pence
+     */
+    long getAmount(int i) {
+        return amounts[i];
+    }
+}
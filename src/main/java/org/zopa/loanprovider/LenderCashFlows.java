@@ -0,0 +1,179 @@
+package org.zopa.loanprovider;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * Monthly cash flow of each lender for a portfolio of loans, calculated in bulk.
+ * Each lender receives, from every loan it gives money to, a share of the monthly repayment (rounded up to pence,
+ * as quoted) proportional to the amount given. Shares are in pence: floor of the exact share, and the pence left
+ * go to the lenders with the biggest remainders, so the shares of a loan always add up to its monthly repayment.
+ *
+ * Loans and lenders are flattened once into primitive columns and shares are calculated in plain loops over them.
+ * Memory is proportional to the lenders allocated to each loan; the full lenders x loans matrix is only built
+ * by {@link #toMatrix()}.
+ * Lenders are identified by instance (the same market snapshot for all the loans).
+ */
+public class LenderCashFlows {
+
+    private final List<LenderData> lenders;
+    private final int loans;
+    private final int[] entryLoans;
+    private final int[] entryLenders;
+    private final long[] entryShares;
+    private final long[] monthlyCashFlows;
+
+    private LenderCashFlows(List<LenderData> lenders, int loans, int[] entryLoans, int[] entryLenders, long[] entryShares) {
+        this.lenders = lenders;
+        this.loans = loans;
+        this.entryLoans = entryLoans;
+        this.entryLenders = entryLenders;
+        this.entryShares = entryShares;
+        this.monthlyCashFlows = new long[lenders.size()];
+        for (int entry = 0; entry < entryShares.length; entry++) {
+            monthlyCashFlows[entryLenders[entry]] += entryShares[entry];
+        }
+    }
+
+    /**
+     * @param portfolio loans with their allocation ({@link Loan#getAllocation()})
+     * @return
+     * @throws IllegalArgumentException when a loan has no allocation
+     */
+    public static LenderCashFlows of(List<Loan> portfolio) {
+        Map<LenderData, Integer> lenderIndexes = new IdentityHashMap<>();
+        List<LenderData> lenders = new ArrayList<>();
+        int entries = 0;
+        for (int loan = 0; loan < portfolio.size(); loan++) {
+            LoanAllocation allocation = portfolio.get(loan).getAllocation().orElseThrow(() ->
+                    new IllegalArgumentException("Loans must be quoted with their lender allocation"));
+            entries += allocation.size();
+        }
+
+        // Flatten the portfolio into columns
+        int[] entryLoans = new int[entries];
+        int[] entryLenders = new int[entries];
+        long[] entryAmounts = new long[entries];
+        long[] payments = new long[portfolio.size()];
+        long[] requested = new long[portfolio.size()];
+        int entry = 0;
+        for (int loan = 0; loan < portfolio.size(); loan++) {
+            Loan quote = portfolio.get(loan);
+            LoanAllocation allocation = quote.getAllocation().get();
+            payments[loan] = toPence(quote.getMonthlyRepayment().setScale(2, BigDecimal.ROUND_CEILING));
+            requested[loan] = toPence(quote.getRequestedAmount());
+            for (int i = 0; i < allocation.size(); i++) {
+                LenderData lender = allocation.getLender(i);
+                Integer lenderIndex = lenderIndexes.get(lender);
+                if (lenderIndex == null) {
+                    lenderIndex = lenders.size();
+                    lenderIndexes.put(lender, lenderIndex);
+                    lenders.add(lender);
+                }
+                entryLoans[entry] = loan;
+                entryLenders[entry] = lenderIndex;
+                entryAmounts[entry] = toPence(allocation.getAmount(i));
+                entry++;
+            }
+        }
+
+        // Exact shares: payment x amount / requested, floor and remainder
+        long[] shares = new long[entries];
+        long[] remainders = new long[entries];
+        for (int i = 0; i < entries; i++) {
+            long numerator = Math.multiplyExact(payments[entryLoans[i]], entryAmounts[i]);
+            shares[i] = numerator / requested[entryLoans[i]];
+            remainders[i] = numerator % requested[entryLoans[i]];
+        }
+        distributeRemainingPence(entryLoans, shares, remainders, payments);
+        return new LenderCashFlows(lenders, portfolio.size(), entryLoans, entryLenders, shares);
+    }
+
+    /**
+     * @return number of lenders receiving money
+     */
+    public int getLendersCount() {
+        return lenders.size();
+    }
+
+    public LenderData getLender(int index) {
+        return lenders.get(index);
+    }
+
+    /**
+     * @param index
+     * @return monthly cash flow of the lender from all the loans, in pence
+     */
+    public long getMonthlyCashFlow(int index) {
+        return monthlyCashFlows[index];
+    }
+
+    /**
+     * @param lender
+     * @return monthly cash flow of the lender from all the loans (0 if it gives no money)
+     */
+    public BigDecimal getMonthlyCashFlow(LenderData lender) {
+        for (int i = 0; i < lenders.size(); i++) {
+            if (lenders.get(i) == lender) {
+                return BigDecimal.valueOf(monthlyCashFlows[i], 2);
+            }
+        }
+        return BigDecimal.valueOf(0, 2);
+    }
+
+    /**
+     * Full matrix of monthly cash flows in pence: one row per loan (portfolio order), one column per lender.
+     * Memory is loans x lenders.
+     *
+     * @return
+     */
+    public long[][] toMatrix() {
+        long[][] matrix = new long[loans][lenders.size()];
+        for (int entry = 0; entry < entryShares.length; entry++) {
+            matrix[entryLoans[entry]][entryLenders[entry]] += entryShares[entry];
+        }
+        return matrix;
+    }
+
+    // Entries of each loan are contiguous: give the pence left to the biggest remainders of the loan
+    // (first entry on ties), sorting the entries of the loan by remainder once
+    private static void distributeRemainingPence(int[] entryLoans, long[] shares, long[] remainders, long[] payments) {
+        int first = 0;
+        while (first < entryLoans.length) {
+            int loan = entryLoans[first];
+            int end = first;
+            long paid = 0;
+            while (end < entryLoans.length && entryLoans[end] == loan) {
+                paid += shares[end++];
+            }
+            long left = payments[loan] - paid;
+            if (left > 0) {
+                Integer[] entries = new Integer[end - first];
+                for (int i = 0; i < entries.length; i++) {
+                    entries[i] = first + i;
+                }
+                // Stable sort: equal remainders keep the entry order
+                Arrays.sort(entries, (a, b) -> Long.compare(remainders[b], remainders[a]));
+                // Less pence left than entries: each floor loses less than a penny
+                for (int i = 0; i < left && i < entries.length; i++) {
+                    shares[entries[i]]++;
+                }
+            }
+            first = end;
+        }
+    }
+
+    private static long toPence(BigDecimal amount) {
+        try {
+            return MarketSnapshot.toPence(amount);
+        } catch (ArithmeticException e) {
+            throw new ArithmeticException(format("Amount {0} can not be stored in pence", amount.toString()));
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package org.zopa.loanprovider;
 
 import java.math.BigDecimal;
+import java.util.Optional;
 
 /**
  * DTO to store all information required for a Loan offer.
@@ -11,12 +12,18 @@ public class Loan {
     private final BigDecimal rate;
     private final BigDecimal monthlyRepayment;
     private final BigDecimal totalRepayment;
+    private final LoanAllocation allocation;
 
     public Loan(BigDecimal requestedAmount, BigDecimal rate, BigDecimal monthlyRepayment, BigDecimal totalRepayment) {
+        this(requestedAmount, rate, monthlyRepayment, totalRepayment, null);
+    }
+
+    public Loan(BigDecimal requestedAmount, BigDecimal rate, BigDecimal monthlyRepayment, BigDecimal totalRepayment, LoanAllocation allocation) {
         this.requestedAmount = requestedAmount;
         this.rate = rate;
         this.monthlyRepayment = monthlyRepayment;
         this.totalRepayment = totalRepayment;
+        this.allocation = allocation;
     }
 
     public BigDecimal getRequestedAmount() {
@@ -34,4 +41,13 @@ public class Loan {
     public BigDecimal getTotalRepayment() {
         return totalRepayment;
     }
+
+    /**
+     * Amount given by each lender (see {@link LenderCashFlows} for their share of the repayments).
+     *
+     * @return the allocation, empty when the loan was quoted without selecting lenders
+     */
+    public Optional<LoanAllocation> getAllocation() {
+        return Optional.ofNullable(allocation);
+    }
 }
@@ -0,0 +1,129 @@
+package org.zopa.loanprovider;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Amount given by each lender to a loan, cheapest lender first.
+ * Loans quoted over a market take the cheapest lenders in order (all of them fully but the last one),
+ * so the allocation only keeps the market, the number of lenders and the amount of the last one.
+ */
+public abstract class LoanAllocation {
+
+    LoanAllocation() {
+    }
+
+    /**
+     * The first lenders of the market, the last one giving only the amount given.
+     *
+     * @param market
+     * @param size       number of lenders
+     * @param lastAmount amount given by the last lender
+     * @return
+     */
+    static LoanAllocation prefixOf(MarketSnapshot market, int size, BigDecimal lastAmount) {
+        return new Prefix(market, size, lastAmount);
+    }
+
+    /**
+     * Copy of the amounts given, sorted by {@link LoanComparator#byRate}.
+     *
+     * @param amounts
+     * @return
+     */
+    static LoanAllocation of(Map<LenderData, BigDecimal> amounts) {
+        List<LenderData> lenders = new ArrayList<>(amounts.keySet());
+        lenders.sort(LoanComparator.byRate);
+        BigDecimal[] sortedAmounts = new BigDecimal[lenders.size()];
+        for (int i = 0; i < sortedAmounts.length; i++) {
+            sortedAmounts[i] = amounts.get(lenders.get(i));
+        }
+        return new Explicit(lenders.toArray(new LenderData[0]), sortedAmounts);
+    }
+
+    /**
+     * @return number of lenders
+     */
+    public abstract int size();
+
+    public abstract LenderData getLender(int index);
+
+    public abstract BigDecimal getAmount(int index);
+
+    /**
+     * @return amount given by each lender, cheapest first
+     */
+    public Map<LenderData, BigDecimal> asMap() {
+        Map<LenderData, BigDecimal> amounts = new LinkedHashMap<>();
+        for (int i = 0; i < size(); i++) {
+            amounts.put(getLender(i), getAmount(i));
+        }
+        return Collections.unmodifiableMap(amounts);
+    }
+
+    private static final class Prefix extends LoanAllocation {
+
+        private final MarketSnapshot market;
+        private final int size;
+        private final BigDecimal lastAmount;
+
+        Prefix(MarketSnapshot market, int size, BigDecimal lastAmount) {
+            this.market = market;
+            this.size = size;
+            this.lastAmount = lastAmount;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public LenderData getLender(int index) {
+            checkIndex(index, size);
+            return market.get(index);
+        }
+
+        @Override
+        public BigDecimal getAmount(int index) {
+            checkIndex(index, size);
+            return index == size - 1 ? lastAmount : market.get(index).getAvailable();
+        }
+    }
+
+    private static final class Explicit extends LoanAllocation {
+
+        private final LenderData[] lenders;
+        private final BigDecimal[] amounts;
+
+        Explicit(LenderData[] lenders, BigDecimal[] amounts) {
+            this.lenders = lenders;
+            this.amounts = amounts;
+        }
+
+        @Override
+        public int size() {
+            return lenders.length;
+        }
+
+        @Override
+        public LenderData getLender(int index) {
+            return lenders[index];
+        }
+
+        @Override
+        public BigDecimal getAmount(int index) {
+            return amounts[index];
+        }
+    }
+
+    private static void checkIndex(int index, int size) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+}
@@ -4,7 +4,7 @@ import java.util.Comparator;
 
 /**
  * Comparator.
- * Now just provide one (byRate), but it possible consider others variables to evaluate the best offer.
+ * Orders used by the {@link MatchingStrategy}s to evaluate the best offer.
  */
 public class LoanComparator {
 
@@ -19,4 +19,12 @@ public class LoanComparator {
         }
     };
 
+    /**
+     * Comparator of available descending (cheapest rate first for the same available), to take the fewest lenders.
+     */
+    public static final Comparator<LenderData> byAvailable = (LenderData left, LenderData right) -> {
+        int available = right.getAvailable().compareTo(left.getAvailable());
+        return available != 0 ? available : left.getRate().compareTo(right.getRate());
+    };
+
 }
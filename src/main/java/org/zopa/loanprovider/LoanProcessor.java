@@ -7,36 +7,91 @@ import java.util.Map;
 import java.util.Optional;
 
 /**
- * Currently only provide a single datasource (file).
- * The idea is enable get data from other sources.
+ * Quotes over market data already loaded (from any source, see {@link MarketDataSource} and {@link AsyncQuoter}
+ * to quote while loading).
+ * Quotes are done over an immutable {@link MarketSnapshot}, so a processor can be shared between threads.
+ * Built with a {@link PrefixSumIndex}, the rate is looked up in the index (O(log n), exact money-weighted rate).
+ * Otherwise the cheapest lenders are walked (each share rounded up to 4 decimals):
+ * with long arithmetic and no allocation when the market and the amount fit in fixed-point (see {@link MarketSnapshot}),
+ * with BigDecimal otherwise. Both give exactly the same rate.
+ * Built with a {@link MatchingStrategy}, the lenders are chosen by the strategy (over the index it builds once)
+ * and the rate is calculated for them the same way (each share rounded up to 4 decimals).
  */
 public class LoanProcessor {
 
-    private final List<LenderData> marketData;
+    private static final int SHARE_SCALE = 4;
+    private static final long SHARE_UNIT = 10_000;
+
+    // Reused on every quote of the thread
+    private static final ThreadLocal<LenderAllocation> allocations = ThreadLocal.withInitial(LenderAllocation::new);
+
+    private final MarketSnapshot market;
+    private final PrefixSumIndex index;
+    private final MatchingStrategy.Matcher matcher;
     private final AmortizationMethod amortizationMethod;
 
+    /**
+     * The market is sorted once here (on a copy), so quotes don't sort the market again.
+     *
+     * @param marketData
+     * @param amortizationMethod
+     */
     public LoanProcessor(List<LenderData> marketData, AmortizationMethod amortizationMethod) {
-        this.marketData = marketData;
+        this(MarketSnapshot.of(marketData), amortizationMethod);
+    }
+
+    public LoanProcessor(MarketSnapshot market, AmortizationMethod amortizationMethod) {
+        this(market, null, amortizationMethod);
+    }
+
+    public LoanProcessor(PrefixSumIndex index, AmortizationMethod amortizationMethod) {
+        this(index.getMarket(), index, amortizationMethod);
+    }
+
+    /**
+     * The strategy indexes the market here, once for all the quotes.
+     *
+     * @param market
+     * @param amortizationMethod
+     * @param matchingStrategy
+     */
+    public LoanProcessor(MarketSnapshot market, AmortizationMethod amortizationMethod, MatchingStrategy matchingStrategy) {
+        this.market = market;
+        this.index = null;
+        this.matcher = matchingStrategy.index(market);
         this.amortizationMethod = amortizationMethod;
     }
 
-    public Optional<Loan> findLoanFor(BigDecimal amount, int months) {
-        if (sufficientOffers(marketData, amount)) {
-            // Loan is possible. So calculate best match
-            marketData.sort(LoanComparator.byRate);
-            return Optional.of(calculateLoanFor(amount, months));
-        } else {
-            return Optional.empty();
-        }
+    private LoanProcessor(MarketSnapshot market, PrefixSumIndex index, AmortizationMethod amortizationMethod) {
+        this.market = market;
+        this.index = index;
+        this.matcher = null;
+        this.amortizationMethod = amortizationMethod;
     }
 
-    private boolean sufficientOffers(List<LenderData> marketData, BigDecimal amountRequested) {
-        BigDecimal totalAvailable = marketData.stream()
-                .map(LenderData::getAvailable)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+    public MarketSnapshot getMarket() {
+        return market;
+    }
 
-        return totalAvailable.compareTo(amountRequested) >= 0;
+    public Optional<Loan> findLoanFor(BigDecimal amount, int months) {
+        long start = QuoteMetrics.start();
+        try {
+            if (matcher != null) {
+                return matcher.match(amount).map(lenders -> calculateLoanFor(lenders, amount, months));
+            }
+            if (sufficientOffers(amount)) {
+                // Loan is possible. So calculate best match
+                return Optional.of(calculateLoanFor(amount, months));
+            } else {
+                return Optional.empty();
+            }
+        } finally {
+            QuoteMetrics.recordSince(QuoteMetrics.QUOTE, start);
+        }
+    }
 
+    private boolean sufficientOffers(BigDecimal amountRequested) {
+        return market.getTotalAvailable().compareTo(amountRequested) >= 0;
     }
 
     /**
@@ -47,22 +102,120 @@ public class LoanProcessor {
      * @return
      */
     private Loan calculateLoanFor(BigDecimal amountRequested, int months) {
-        Map<LenderData, BigDecimal> bestLenders = collectLendersFor(amountRequested);
+        // Not positive amounts fall back to the lenders walk, the index divides by the amount
+        if (index != null && amountRequested.signum() > 0) {
+            BigDecimal loanRate = index.calculateShareRate(amountRequested).get();
+            // Sufficient offers: the lender after the ones fully taken gives the rest
+            int taken = index.lendersBelow(amountRequested);
+            BigDecimal lastAmount = amountRequested.subtract(index.getCumulativeAvailable(taken));
+            return buildLoan(loanRate, amountRequested, months, LoanAllocation.prefixOf(market, taken + 1, lastAmount));
+        }
+        if (market.isFixedPoint() && amountRequested.signum() >= 0) {
+            Loan loan = calculateFixedPointLoanFor(amountRequested, months);
+            if (loan != null) {
+                return loan;
+            }
+        }
+        return calculateLoanFor(collectLendersFor(amountRequested), amountRequested, months);
+    }
+
+    /**
+     * Same rate as {@link #calculateShareRate(Map, BigDecimal)} (value and scale) calculated over the fixed-point
+     * columns of the market, with the lenders collected in the allocation of the current thread.
+     *
+     * @param amountRequested
+     * @param months
+     * @return the loan, or null when the amount (or the calculation) does not fit in the fixed-point columns
+     */
+    private Loan calculateFixedPointLoanFor(BigDecimal amountRequested, int months) {
+        LenderAllocation allocation = allocations.get();
+        BigDecimal loanRate;
+        try {
+            long amount = MarketSnapshot.toPence(amountRequested);
+            collectLendersFor(amount, allocation);
+            loanRate = calculateShareRate(allocation, amount);
+        } catch (ArithmeticException e) {
+            return null;
+        }
+        // Cheapest lenders taken in order: only the amount of the last one is kept
+        int taken = allocation.size();
+        BigDecimal lastAmount = taken == 0 ? BigDecimal.ZERO : BigDecimal.valueOf(allocation.getAmount(taken - 1), 2);
+        return buildLoan(loanRate, amountRequested, months, LoanAllocation.prefixOf(market, taken, lastAmount));
+    }
+
+    /**
+     * Allocation-free version of {@link #collectLendersFor(BigDecimal)}: amounts in pence.
+     *
+     * @param amountRequested in pence
+     * @param allocation      cleared and filled with the lenders collected
+     */
+    void collectLendersFor(long amountRequested, LenderAllocation allocation) {
+        long start = QuoteMetrics.start();
+        allocation.clear();
+        long collected = 0;
+        for (int i = 0; i < market.size() && collected < amountRequested; i++) {
+            long borrowed = Math.min(market.getFixedAvailable(i), amountRequested - collected);
+            collected += borrowed;
+            allocation.add(i, borrowed);
+        }
+        QuoteMetrics.recordSince(QuoteMetrics.LENDER_COLLECTION, start);
+        QuoteMetrics.record(QuoteMetrics.LENDERS_SCANNED, allocation.size());
+    }
+
+    /**
+     * Money-Weighted Rate calculator over the fixed-point columns: shares rounded up to 4 decimals (1/10000 units)
+     * multiplied by the rates (unscaled at the market rate scale), result with the scale the BigDecimal sum has.
+     *
+     * @param allocation
+     * @param amountRequested in pence
+     * @return
+     */
+    private BigDecimal calculateShareRate(LenderAllocation allocation, long amountRequested) {
+        if (allocation.size() == 0) {
+            return BigDecimal.ZERO;
+        }
+        long weightedRate = 0;
+        int scale = 0;
+        for (int i = 0; i < allocation.size(); i++) {
+            int lender = allocation.getLender(i);
+            long share = -Math.floorDiv(-Math.multiplyExact(allocation.getAmount(i), SHARE_UNIT), amountRequested);
+            weightedRate = Math.addExact(weightedRate, Math.multiplyExact(share, market.getFixedRate(lender)));
+            scale = Math.max(scale, market.getRateScale(lender));
+        }
+        return BigDecimal.valueOf(weightedRate, SHARE_SCALE + market.getRateScale())
+                .setScale(SHARE_SCALE + scale, BigDecimal.ROUND_UNNECESSARY);
+    }
+
+    /**
+     * Calculate rate and build the loan result for the lenders selected.
+     *
+     * @param bestLenders     amount given by each lender
+     * @param amountRequested
+     * @param months
+     * @return
+     */
+    Loan calculateLoanFor(Map<LenderData, BigDecimal> bestLenders, BigDecimal amountRequested, int months) {
         BigDecimal loanRate = calculateShareRate(bestLenders, amountRequested);
+        return buildLoan(loanRate, amountRequested, months, LoanAllocation.of(bestLenders));
+    }
+
+    private Loan buildLoan(BigDecimal loanRate, BigDecimal amountRequested, int months, LoanAllocation allocation) {
+        long start = QuoteMetrics.start();
         BigDecimal monthtlyPayment = amortizationMethod.calculateMonthlyPayment(loanRate, amountRequested, months);
+        QuoteMetrics.recordSince(QuoteMetrics.AMORTIZATION, start);
         BigDecimal totalRepayment = monthtlyPayment.multiply(BigDecimal.valueOf(months));
-        return new Loan(amountRequested, loanRate, monthtlyPayment, totalRepayment);
+        return new Loan(amountRequested, loanRate, monthtlyPayment, totalRepayment, allocation);
     }
 
     /**
      * Collect all lenders until get the amount requested.
-     * TODO: substract amount given for each lender.
-     * Currently it is not updating available money. It assumes other external process should do it.
+     * A quote is not updating available money, {@link ReservationBook} subtracts the amount given by each lender.
      *
      * @param amountRequested
      * @return
      */
-    private Map<LenderData, BigDecimal> collectLendersFor(BigDecimal amountRequested) {
+    Map<LenderData, BigDecimal> collectLendersFor(BigDecimal amountRequested) {
+        long start = QuoteMetrics.start();
         BigDecimal amountCollector = new BigDecimal(0);
         Map<LenderData, BigDecimal> lendersCollector = new HashMap<>();
         LenderData lenderData;
@@ -70,9 +223,9 @@ public class LoanProcessor {
         BigDecimal borrowed;
         BigDecimal diff;
 
-        // Iterate over the lenders until reach the total amount.
-        for (int i = 0; i < marketData.size() && amountCollector.compareTo(amountRequested) < 0; i++) {
-            lenderData = marketData.get(i);
+        // Iterate over the cheapest lenders until reach the total amount.
+        for (int i = 0; i < market.size() && amountCollector.compareTo(amountRequested) < 0; i++) {
+            lenderData = market.get(i);
             available = lenderData.getAvailable();
 
             if (amountCollector.add(available).compareTo(amountRequested) == 1) {
@@ -88,6 +241,8 @@ public class LoanProcessor {
             lendersCollector.put(lenderData, borrowed);
         }
 
+        QuoteMetrics.recordSince(QuoteMetrics.LENDER_COLLECTION, start);
+        QuoteMetrics.record(QuoteMetrics.LENDERS_SCANNED, lendersCollector.size());
         return lendersCollector;
     }
 
@@ -103,13 +258,21 @@ public class LoanProcessor {
             return lendersCollector
                     .entrySet()
                     .stream()
-                    .map(data -> data.getValue()
-                            .divide(amountRequested, 4, BigDecimal.ROUND_CEILING)
-                            .multiply(data.getKey().getRate()))
+                    .map(data -> weightedShare(data.getKey(), data.getValue(), amountRequested))
                     .reduce(BigDecimal.ZERO, BigDecimal::add);
         } catch (ArithmeticException e) {
             throw new ArithmeticException("Error calculating money-weighted rate");
         }
     }
 
+    /**
+     * @param lenderData
+     * @param borrowed
+     * @param amountRequested
+     * @return share of the lender (rounded up to 4 decimals) multiplied by its rate
+     */
+    static BigDecimal weightedShare(LenderData lenderData, BigDecimal borrowed, BigDecimal amountRequested) {
+        return borrowed.divide(amountRequested, SHARE_SCALE, BigDecimal.ROUND_CEILING).multiply(lenderData.getRate());
+    }
+
 }
@@ -1,9 +1,18 @@
 package org.zopa.loanprovider;
 
+import javax.management.JMException;
 import java.io.IOException;
 import java.math.BigDecimal;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 import static java.text.MessageFormat.format;
 
@@ -11,17 +20,50 @@ import static java.text.MessageFormat.format;
  * Main class to execute the app:
  * Parameters to run:
  * [market data file] + [amount_requested]
+ * Or as a quote server (see {@link QuoteServer}):
+ * --server + [market data file] + [port]
+ * Or to convert a CSV market data file to the binary format (see {@link BinaryMarketFile}):
+ * --convert + [CSV market data file] + [binary market data file]
+ * Or as the worker of a rate range of the market (see {@link PartitionWorker}), rates optional ("-" for unbounded),
+ * listening on the loopback address unless one is given ([address]:[port]):
+ * --worker + [market data file] + [port] + [lower rate] + [upper rate]
+ * Or to quote over the partition workers (see {@link PartitionCoordinator}):
+ * --coordinator + [amount_requested] + [worker host:port]...
+ * Market data files can be CSV or binary.
  */
 public class Main {
 
     //This should be config from file or other source to be more flexible
-    private static final int DEFAULT_MONTHS = 36;
-    private static final int MIN_AMOUNT = 1000;
-    private static final int MAX_AMOUNT = 15000;
+    static final int DEFAULT_MONTHS = 36;
+    static final int MIN_AMOUNT = 1000;
+    static final int MAX_AMOUNT = 15000;
+
+    private static final String SERVER_OPTION = "--server";
+    private static final String CONVERT_OPTION = "--convert";
+    private static final String WORKER_OPTION = "--worker";
+    private static final String COORDINATOR_OPTION = "--coordinator";
+    private static final String UNBOUNDED_RATE = "-";
+    private static final long METRICS_REPORT_SECONDS = 60;
 
     public static void main(String[] args) {
 
-        if (args.length == 2) {
+        if (args.length == 3 && SERVER_OPTION.equals(args[0])) {
+
+            startServer(args[1], args[2]);
+
+        } else if (args.length == 3 && CONVERT_OPTION.equals(args[0])) {
+
+            convert(args[1], args[2]);
+
+        } else if ((args.length == 3 || args.length == 5) && WORKER_OPTION.equals(args[0])) {
+
+            startWorker(args[1], args[2], args.length == 5 ? args[3] : UNBOUNDED_RATE, args.length == 5 ? args[4] : UNBOUNDED_RATE);
+
+        } else if (args.length >= 3 && COORDINATOR_OPTION.equals(args[0])) {
+
+            coordinate(args[1], Arrays.copyOfRange(args, 2, args.length));
+
+        } else if (args.length == 2) {
 
             final String marketFileParam = args[0];
             final BigDecimal loanAmountParam;
@@ -31,9 +73,14 @@ public class Main {
 
                 if (isValidAmount(loanAmountParam) && isBetweenMinMax(loanAmountParam)) {
 
-                    // I/O blocking read. For other kind of app (not console) should be use async read
-                    List<LenderData> marketData = FileReader.getMarketData(marketFileParam);
-                    Optional<Loan> loan = getLoan(marketData, loanAmountParam);
+                    // I/O blocking read (memory-mapped) plus delta log replay. For other kind of app (not console) should be use async read
+                    Optional<Loan> loan;
+                    if (BinaryMarketFile.isBinary(marketFileParam) && !Files.exists(DeltaLog.pathFor(marketFileParam))) {
+                        // Columns loaded as they are, no lender objects created
+                        loan = getLoan(BinaryMarketFile.load(marketFileParam), loanAmountParam);
+                    } else {
+                        loan = getLoan(DeltaLog.load(marketFileParam), loanAmountParam);
+                    }
                     Printer.printResult(loan);
 
                 } else {
@@ -58,19 +105,157 @@ public class Main {
 
     }
 
-    private static boolean isBetweenMinMax(BigDecimal amount) {
+    private static void startServer(String marketFileParam, String portParam) {
+        final int port;
+        final List<LenderData> marketData;
+
+        try {
+            port = Integer.parseInt(portParam);
+            // Market loaded once for all the quotes, then reloaded when the file changes
+            marketData = DeltaLog.load(marketFileParam);
+        } catch (NumberFormatException e) {
+            Printer.printError("Port parameter must be a number");
+            return;
+        } catch (IOException e) {
+            Printer.printError("Error loading market data");
+            return;
+        } catch (RuntimeException e) {
+            Printer.printError(e.getMessage());
+            return;
+        }
+
+        // Same quotes requested over and over: cached by market version, pre-warmed for the default term
+        QuoteEngine engine = new QuoteEngine(MarketSnapshot.of(marketData), new FastFrenchAmortizationMethod(),
+                new QuoteCache(QuoteCache.DEFAULT_MAXIMUM_SIZE, true));
+        try {
+            QuoteServer server = new QuoteServer(engine, port);
+            MarketWatcher watcher = new MarketWatcher(Paths.get(marketFileParam), engine);
+            watcher.start();
+            if (QuoteMetrics.isEnabled()) {
+                startMetrics();
+            }
+            server.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+            Printer.printMessage(format("Quote server listening on port {0}", String.valueOf(server.getPort())));
+        } catch (IOException e) {
+            Printer.printError(format("Error starting quote server on port {0}", String.valueOf(port)));
+        }
+    }
+
+    /**
+     * Metrics through JMX and printed every {@value #METRICS_REPORT_SECONDS} seconds.
+     */
+    private static void startMetrics() {
+        try {
+            QuoteMetrics.registerMBeans();
+        } catch (JMException e) {
+            Printer.printError("Error registering metrics in JMX");
+        }
+        QuoteMetrics.startReporter(METRICS_REPORT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private static void startWorker(String marketFileParam, String portParam, String lowerRateParam, String upperRateParam) {
+        final InetAddress address;
+        final int port;
+        final List<LenderData> marketData;
+
+        try {
+            int separator = portParam.lastIndexOf(':');
+            address = separator < 0 ? InetAddress.getLoopbackAddress() : InetAddress.getByName(portParam.substring(0, separator));
+            port = Integer.parseInt(portParam.substring(separator + 1));
+        } catch (NumberFormatException | UnknownHostException e) {
+            Printer.printError("Port parameter must be [port] or [address]:[port]");
+            return;
+        }
+        try {
+            marketData = PartitionWorker.loadPartition(marketFileParam, parseRate(lowerRateParam), parseRate(upperRateParam));
+        } catch (NumberFormatException e) {
+            Printer.printError("Rate parameters must be numbers");
+            return;
+        } catch (IOException e) {
+            Printer.printError("Error loading market data");
+            return;
+        } catch (RuntimeException e) {
+            Printer.printError(e.getMessage());
+            return;
+        }
+
+        try {
+            PartitionWorker worker = new PartitionWorker(marketData, address, port);
+            worker.start();
+            Printer.printMessage(format("Partition worker listening on port {0}", String.valueOf(worker.getPort())));
+            // Accepting thread is a daemon: keep the process alive
+            Thread.currentThread().join();
+        } catch (IOException e) {
+            Printer.printError(format("Error starting partition worker on port {0}", String.valueOf(port)));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static BigDecimal parseRate(String rateParam) {
+        return UNBOUNDED_RATE.equals(rateParam) ? null : new BigDecimal(rateParam);
+    }
+
+    private static void coordinate(String amountParam, String[] workerParams) {
+        final BigDecimal amount;
+        final List<InetSocketAddress> workers = new ArrayList<>();
+
+        try {
+            amount = new BigDecimal(amountParam);
+            for (String workerParam : workerParams) {
+                int separator = workerParam.lastIndexOf(':');
+                workers.add(new InetSocketAddress(workerParam.substring(0, separator), Integer.parseInt(workerParam.substring(separator + 1))));
+            }
+        } catch (NumberFormatException | StringIndexOutOfBoundsException e) {
+            Printer.printError("Workers must be given as [host]:[port] and amount must be a number");
+            return;
+        }
+
+        if (!isValidAmount(amount) || !isBetweenMinMax(amount)) {
+            Printer.printError(format("Amount requested must be between {0} and {1}", String.valueOf(MIN_AMOUNT), String.valueOf(MAX_AMOUNT)));
+            Printer.printError("Amount requested must be for 100 increment");
+            return;
+        }
+
+        try (PartitionCoordinator coordinator = new PartitionCoordinator(workers, new FastFrenchAmortizationMethod())) {
+            Printer.printResult(coordinator.findLoanFor(amount, DEFAULT_MONTHS));
+        } catch (IOException e) {
+            Printer.printError("Error quoting over partition workers");
+        } catch (RuntimeException e) {
+            Printer.printError(e.getMessage());
+        }
+    }
+
+    private static void convert(String csvFileParam, String binaryFileParam) {
+        try {
+            BinaryMarketFile.convert(csvFileParam, binaryFileParam);
+            Printer.printMessage(format("Market data written to {0}", binaryFileParam));
+        } catch (IOException e) {
+            Printer.printError("Error converting market data");
+        } catch (RuntimeException e) {
+            Printer.printError(e.getMessage());
+        }
+    }
+
+    static boolean isBetweenMinMax(BigDecimal amount) {
         return amount.compareTo(BigDecimal.valueOf(MIN_AMOUNT)) >= 0 &&
                 amount.compareTo(BigDecimal.valueOf(MAX_AMOUNT)) <= 0;
     }
 
-    private static boolean isValidAmount(BigDecimal amount) {
+    static boolean isValidAmount(BigDecimal amount) {
         return amount.remainder(BigDecimal.valueOf(100)).equals(BigDecimal.valueOf(0));
     }
 
     public static Optional<Loan> getLoan(List<LenderData> marketData, BigDecimal amount) throws IOException {
-        AmortizationMethod amortizationMethod = new FrenchAmortizationMethod();
+        AmortizationMethod amortizationMethod = new FastFrenchAmortizationMethod();
         LoanProcessor processor = new LoanProcessor(marketData, amortizationMethod);
         return processor.findLoanFor(amount, DEFAULT_MONTHS);
     }
 
+    static Optional<Loan> getLoan(ColumnarMarket market, BigDecimal amount) {
+        ColumnarLoanProcessor processor = new ColumnarLoanProcessor(market, new FastFrenchAmortizationMethod());
+        return processor.findLoanFor(amount, DEFAULT_MONTHS);
+    }
+
 }
@@ -0,0 +1,320 @@
+package org.zopa.loanprovider;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * Reader component to map a lenders list from a memory-mapped file.
+ * Same contract as {@link FileReader#getMarketData(String)}, but bytes are scanned directly:
+ * rate and available are parsed as fixed-point longs (unscaled value + scale), so no String is built for them.
+ * Only the lender name is decoded (UTF-8).
+ * Accepts the same lines as {@link FileReader} (trailing commas, exponents as in 7.5E-2), ended by LF or CR LF.
+ * Every error reports the number of the invalid line.
+ */
+public class MappedFileReader {
+
+    private static final byte COMMA = ',';
+    private static final byte LF = '\n';
+    private static final byte CR = '\r';
+
+    // A mapping can not be bigger than Integer.MAX_VALUE, so large files are read in windows
+    private static final long WINDOW_SIZE = 1L << 30;
+    private static final long MIN_CHUNK_SIZE = 1L << 20;
+    private static final long MAX_UNSCALED = (Long.MAX_VALUE - 9) / 10;
+
+    /**
+     * Read data from a file mapped in memory.
+     *
+     * @param filePath
+     * @return
+     * @throws IOException
+     */
+    public static List<LenderData> getMarketData(String filePath) throws IOException {
+        long start = QuoteMetrics.start();
+        List<LenderData> lenders = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            long lineNumber = 1;
+            while (position < size) {
+                long windowSize = Math.min(WINDOW_SIZE, size - position);
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, windowSize);
+                int end = position + windowSize == size ? (int) windowSize : lastLineEnd(buffer, lineNumber);
+                lineNumber = parse(buffer, 0, end, lineNumber, position == 0, lenders);
+                position += end;
+            }
+        } catch (ParseException e) {
+            throw new RuntimeException(e.getMessage());
+        }
+        QuoteMetrics.recordSince(QuoteMetrics.FILE_READ, start);
+        return lenders;
+    }
+
+    /**
+     * Parallel version of {@link #getMarketData(String)} running on the common ForkJoin pool.
+     *
+     * @param filePath
+     * @return
+     * @throws IOException
+     */
+    public static List<LenderData> getMarketDataParallel(String filePath) throws IOException {
+        return getMarketDataParallel(filePath, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Read data from a file mapped in memory, splitting it in chunks at line boundaries.
+     * Every chunk is parsed on the pool and the results are merged in file order,
+     * so the list is the same as the one returned by {@link #getMarketData(String)}.
+     * When some lines are invalid, the error reported is the first one in the file (with its line number).
+     *
+     * @param filePath
+     * @param pool
+     * @return
+     * @throws IOException
+     */
+    public static List<LenderData> getMarketDataParallel(String filePath, ForkJoinPool pool) throws IOException {
+        long start = QuoteMetrics.start();
+        List<ChunkTask> chunks = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long chunkSize = Math.max(MIN_CHUNK_SIZE, size / (pool.getParallelism() * 4L));
+            long position = 0;
+            while (position < size) {
+                long windowSize = Math.min(WINDOW_SIZE, size - position);
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, windowSize);
+                int end = position + windowSize == size ? (int) windowSize : lastLineEnd(buffer, 1);
+                int chunkStart = 0;
+                while (chunkStart < end) {
+                    int chunkEnd = chunkStart + chunkSize >= end ? end : nextLineStart(buffer, (int) (chunkStart + chunkSize), end);
+                    ChunkTask chunk = new ChunkTask(buffer, position, chunkStart, chunkEnd);
+                    chunks.add(chunk);
+                    pool.execute(chunk);
+                    chunkStart = chunkEnd;
+                }
+                position += end;
+            }
+
+            int total = 0;
+            for (ChunkTask chunk : chunks) {
+                chunk.join();
+                if (chunk.errorLine > 0) {
+                    long lineNumber = countLines(channel, chunk.offset + chunk.from) + chunk.errorLine;
+                    throw new RuntimeException(parseError(lineNumber).getMessage());
+                }
+                total += chunk.lenders.size();
+            }
+
+            List<LenderData> lenders = new ArrayList<>(total);
+            chunks.forEach(chunk -> lenders.addAll(chunk.lenders));
+            QuoteMetrics.recordSince(QuoteMetrics.FILE_READ, start);
+            return lenders;
+        } catch (ParseException e) {
+            throw new RuntimeException(e.getMessage());
+        }
+    }
+
+    /**
+     * Parse all lines between the given offsets.
+     *
+     * @param buffer
+     * @param from       first byte of a line
+     * @param to         end of the last line (exclusive)
+     * @param lineNumber number of the line starting at from
+     * @param skipHeader the first line is the header
+     * @param lenders    collector for the lenders parsed
+     * @return number of the next line to parse
+     * @throws ParseException
+     */
+    static long parse(ByteBuffer buffer, int from, int to, long lineNumber, boolean skipHeader, List<LenderData> lenders) throws ParseException {
+        byte[] scratch = new byte[64];
+        int lineStart = from;
+        if (skipHeader && lineStart < to) {
+            lineStart = nextLineStart(buffer, lineStart, to);
+            lineNumber++;
+        }
+        while (lineStart < to) {
+            int lineEnd = indexOf(buffer, LF, lineStart, to);
+            int next = lineEnd < 0 ? to : lineEnd + 1;
+            if (lineEnd < 0) {
+                lineEnd = to;
+            }
+            scratch = ensureCapacity(scratch, lineEnd - lineStart);
+            lenders.add(mapToLender(buffer, lineStart, lineEnd, lineNumber, scratch));
+            lineNumber++;
+            lineStart = next;
+        }
+        return lineNumber;
+    }
+
+    private static LenderData mapToLender(ByteBuffer buffer, int from, int to, long lineNumber, byte[] scratch) throws ParseException {
+        if (to > from && buffer.get(to - 1) == CR) {
+            to--;
+        }
+        int firstComma = indexOf(buffer, COMMA, from, to);
+        int secondComma = firstComma < 0 ? -1 : indexOf(buffer, COMMA, firstComma + 1, to);
+        if (secondComma < 0) {
+            throw parseError(lineNumber);
+        }
+        // Trailing commas are ignored (as String.split does), any other value is an error
+        int thirdComma = indexOf(buffer, COMMA, secondComma + 1, to);
+        int availableEnd = thirdComma < 0 ? to : thirdComma;
+        for (int i = availableEnd; i < to; i++) {
+            if (buffer.get(i) != COMMA) {
+                throw parseError(lineNumber);
+            }
+        }
+        String name = decode(buffer, from, firstComma, scratch);
+        BigDecimal rate = parseDecimal(buffer, firstComma + 1, secondComma, lineNumber, scratch);
+        BigDecimal available = parseDecimal(buffer, secondComma + 1, availableEnd, lineNumber, scratch);
+        return new LenderData(name, rate, available);
+    }
+
+    /**
+     * Plain decimal ([+-]digits[.digits]) parsed as unscaled long and scale.
+     * Same value and scale as new BigDecimal(text). Values not fitting in a long, with exponent
+     * or with non-ASCII characters (digits of other scripts) take the slow path.
+     */
+    private static BigDecimal parseDecimal(ByteBuffer buffer, int from, int to, long lineNumber, byte[] scratch) throws ParseException {
+        int i = from;
+        boolean negative = false;
+        if (i < to && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+            negative = buffer.get(i) == '-';
+            i++;
+        }
+        long unscaled = 0;
+        int scale = 0;
+        int digits = 0;
+        boolean point = false;
+        for (; i < to; i++) {
+            byte b = buffer.get(i);
+            if (b >= '0' && b <= '9') {
+                if (unscaled > MAX_UNSCALED) {
+                    return parseDecimalSlow(buffer, from, to, lineNumber, scratch);
+                }
+                unscaled = unscaled * 10 + (b - '0');
+                digits++;
+                if (point) {
+                    scale++;
+                }
+            } else if (b == '.' && !point) {
+                point = true;
+            } else if (b == 'e' || b == 'E' || b < 0) {
+                return parseDecimalSlow(buffer, from, to, lineNumber, scratch);
+            } else {
+                throw parseError(lineNumber);
+            }
+        }
+        if (digits == 0) {
+            throw parseError(lineNumber);
+        }
+        return BigDecimal.valueOf(negative ? -unscaled : unscaled, scale);
+    }
+
+    private static BigDecimal parseDecimalSlow(ByteBuffer buffer, int from, int to, long lineNumber, byte[] scratch) throws ParseException {
+        try {
+            return new BigDecimal(decode(buffer, from, to, scratch));
+        } catch (NumberFormatException e) {
+            throw parseError(lineNumber);
+        }
+    }
+
+    private static String decode(ByteBuffer buffer, int from, int to, byte[] scratch) {
+        for (int i = from; i < to; i++) {
+            scratch[i - from] = buffer.get(i);
+        }
+        return new String(scratch, 0, to - from, StandardCharsets.UTF_8);
+    }
+
+    private static int indexOf(ByteBuffer buffer, byte value, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buffer.get(i) == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int nextLineStart(ByteBuffer buffer, int from, int to) {
+        int lineEnd = indexOf(buffer, LF, from, to);
+        return lineEnd < 0 ? to : lineEnd + 1;
+    }
+
+    private static int lastLineEnd(ByteBuffer buffer, long lineNumber) throws ParseException {
+        for (int i = buffer.limit() - 1; i >= 0; i--) {
+            if (buffer.get(i) == LF) {
+                return i + 1;
+            }
+        }
+        // A single line bigger than a window
+        throw parseError(lineNumber);
+    }
+
+    /**
+     * Number of lines before the given position. Only used to report errors.
+     */
+    private static long countLines(FileChannel channel, long end) throws IOException {
+        long lines = 0;
+        for (long position = 0; position < end; position += WINDOW_SIZE) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW_SIZE, end - position));
+            for (int i = 0; i < buffer.limit(); i++) {
+                if (buffer.get(i) == LF) {
+                    lines++;
+                }
+            }
+        }
+        return lines;
+    }
+
+    private static byte[] ensureCapacity(byte[] scratch, int length) {
+        return scratch.length >= length ? scratch : new byte[Math.max(length, scratch.length * 2)];
+    }
+
+    static ParseException parseError(long lineNumber) {
+        return new ParseException(format("Error reading market data file. Invalid line {0}", String.valueOf(lineNumber)), (int) Math.min(lineNumber, Integer.MAX_VALUE));
+    }
+
+    /**
+     * Parse a chunk of whole lines. Errors are kept with the line number inside the chunk,
+     * the caller knows where the chunk starts in the file.
+     */
+    private static class ChunkTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final ByteBuffer buffer;
+        private final long offset;
+        private final int from;
+        private final int to;
+        private final List<LenderData> lenders = new ArrayList<>();
+        private long errorLine;
+
+        ChunkTask(ByteBuffer buffer, long offset, int from, int to) {
+            this.buffer = buffer;
+            this.offset = offset;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                parse(buffer, from, to, 1, offset == 0 && from == 0, lenders);
+            } catch (ParseException e) {
+                errorLine = e.getErrorOffset();
+            }
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package org.zopa.loanprovider;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Source of market data delivered asynchronously in batches of lenders.
+ * Pull based: a batch is only requested with {@link #nextBatch()} after the previous one was received,
+ * and sources read ahead a bounded number of batches, so a slow consumer slows down the reading (back pressure).
+ * See {@link AsyncQuoter} to quote while the market is being loaded.
+ */
+public interface MarketDataSource extends AutoCloseable {
+
+    /**
+     * Request the next batch. Only one request can be pending at a time.
+     *
+     * @return future completed with the next lenders, with an empty list when there are no more lenders,
+     * or exceptionally when the data can not be read
+     */
+    CompletableFuture<List<LenderData>> nextBatch();
+
+    /**
+     * @return true when lenders are delivered sorted by {@link LoanComparator#byRate} (cheapest first)
+     */
+    boolean isSorted();
+
+    /**
+     * Stop reading. A pending request is completed with an empty list.
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,243 @@
+package org.zopa.loanprovider;
+
+import com.google.common.math.LongMath;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Immutable market data sorted by {@link LoanComparator#byRate} (cheapest first), with its total available.
+ * Built once and then safe to share between any number of threads.
+ * Each snapshot gets a new version number.
+ * Rates and available amounts are also kept as fixed-point longs, for allocation-free quotes (see {@link LoanProcessor}).
+ */
+public final class MarketSnapshot implements Iterable<LenderData> {
+
+    private static final AtomicLong versions = new AtomicLong();
+
+    private static final int MAX_RATE_SCALE = 9;
+    private static final int AMOUNT_SCALE = 2;
+
+    private final LenderData[] lenders;
+    private final BigDecimal totalAvailable;
+    private final long version;
+
+    // Fixed-point columns (null when some value does not fit): rates unscaled at rateScale, available in pence
+    private final int rateScale;
+    private final long[] rates;
+    private final byte[] rateScales;
+    private final long[] available;
+
+    private MarketSnapshot(LenderData[] lenders) {
+        this(lenders, Arrays.stream(lenders)
+                .map(LenderData::getAvailable)
+                .reduce(BigDecimal.ZERO, BigDecimal::add));
+    }
+
+    private MarketSnapshot(LenderData[] lenders, BigDecimal totalAvailable) {
+        this.lenders = lenders;
+        this.totalAvailable = totalAvailable;
+        this.version = versions.incrementAndGet();
+
+        int maxScale = 0;
+        long[] fixedRates = new long[lenders.length];
+        byte[] fixedRateScales = new byte[lenders.length];
+        long[] fixedAvailable = new long[lenders.length];
+        try {
+            for (int i = 0; i < lenders.length; i++) {
+                BigDecimal rate = lenders[i].getRate();
+                if (rate.scale() < 0 || rate.scale() > MAX_RATE_SCALE) {
+                    throw new ArithmeticException();
+                }
+                fixedRates[i] = rate.unscaledValue().longValueExact();
+                fixedRateScales[i] = (byte) rate.scale();
+                maxScale = Math.max(maxScale, rate.scale());
+                fixedAvailable[i] = toPence(lenders[i].getAvailable());
+            }
+            for (int i = 0; i < lenders.length; i++) {
+                fixedRates[i] = Math.multiplyExact(fixedRates[i], LongMath.pow(10, maxScale - fixedRateScales[i]));
+            }
+        } catch (ArithmeticException e) {
+            fixedRates = null;
+            fixedRateScales = null;
+            fixedAvailable = null;
+        }
+        this.rateScale = maxScale;
+        this.rates = fixedRates;
+        this.rateScales = fixedRateScales;
+        this.available = fixedAvailable;
+    }
+
+    private MarketSnapshot(LenderData[] lenders, BigDecimal totalAvailable, int rateScale, long[] rates, byte[] rateScales, long[] available) {
+        this.lenders = lenders;
+        this.totalAvailable = totalAvailable;
+        this.version = versions.incrementAndGet();
+        this.rateScale = rateScale;
+        this.rates = rates;
+        this.rateScales = rateScales;
+        this.available = available;
+    }
+
+    /**
+     * Copy and sort the market data given. The list is not modified.
+     *
+     * @param marketData
+     * @return
+     */
+    public static MarketSnapshot of(List<LenderData> marketData) {
+        LenderData[] lenders = marketData.toArray(new LenderData[0]);
+        Arrays.sort(lenders, LoanComparator.byRate);
+        return new MarketSnapshot(lenders);
+    }
+
+    /**
+     * New snapshot with some lenders removed (same instances of this snapshot) and others added.
+     * Only the lenders added are sorted: they are merged with the ones kept, the total available is updated
+     * with the amounts of the changes and the fixed-point columns of the lenders kept are copied
+     * (unless a rate added needs a bigger rate scale, then they are calculated again).
+     *
+     * @param removed
+     * @param added
+     * @return
+     */
+    public MarketSnapshot withChanges(Collection<LenderData> removed, Collection<LenderData> added) {
+        Set<LenderData> removedLenders = Collections.newSetFromMap(new IdentityHashMap<>());
+        removedLenders.addAll(removed);
+        LenderData[] addedLenders = added.toArray(new LenderData[0]);
+        Arrays.sort(addedLenders, LoanComparator.byRate);
+
+        BigDecimal total = totalAvailable;
+        int size = lenders.length + addedLenders.length;
+        for (LenderData lenderData : lenders) {
+            if (removedLenders.contains(lenderData)) {
+                total = total.subtract(lenderData.getAvailable());
+                size--;
+            }
+        }
+        for (LenderData lenderData : addedLenders) {
+            total = total.add(lenderData.getAvailable());
+        }
+
+        LenderData[] merged = new LenderData[size];
+        // Index in this snapshot of each lender kept, -1 for the ones added
+        int[] source = new int[size];
+        int i = 0;
+        int j = 0;
+        for (int k = 0; k < size; k++) {
+            while (i < lenders.length && removedLenders.contains(lenders[i])) {
+                i++;
+            }
+            if (j < addedLenders.length && (i == lenders.length || LoanComparator.byRate.compare(addedLenders[j], lenders[i]) < 0)) {
+                merged[k] = addedLenders[j++];
+                source[k] = -1;
+            } else {
+                merged[k] = lenders[i];
+                source[k] = i++;
+            }
+        }
+        return isFixedPoint() ? withFixedPoint(merged, total, source) : new MarketSnapshot(merged, total);
+    }
+
+    private MarketSnapshot withFixedPoint(LenderData[] merged, BigDecimal total, int[] source) {
+        long[] fixedRates = new long[merged.length];
+        byte[] fixedRateScales = new byte[merged.length];
+        long[] fixedAvailable = new long[merged.length];
+        try {
+            for (int k = 0; k < merged.length; k++) {
+                if (source[k] >= 0) {
+                    fixedRates[k] = rates[source[k]];
+                    fixedRateScales[k] = rateScales[source[k]];
+                    fixedAvailable[k] = available[source[k]];
+                } else {
+                    BigDecimal rate = merged[k].getRate();
+                    if (rate.scale() < 0 || rate.scale() > rateScale) {
+                        // Needs a bigger rate scale (or does not fit): all the columns again
+                        return new MarketSnapshot(merged, total);
+                    }
+                    fixedRates[k] = Math.multiplyExact(rate.unscaledValue().longValueExact(), LongMath.pow(10, rateScale - rate.scale()));
+                    fixedRateScales[k] = (byte) rate.scale();
+                    fixedAvailable[k] = toPence(merged[k].getAvailable());
+                }
+            }
+        } catch (ArithmeticException e) {
+            return new MarketSnapshot(merged, total);
+        }
+        return new MarketSnapshot(merged, total, rateScale, fixedRates, fixedRateScales, fixedAvailable);
+    }
+
+    public LenderData get(int index) {
+        return lenders[index];
+    }
+
+    public int size() {
+        return lenders.length;
+    }
+
+    public BigDecimal getTotalAvailable() {
+        return totalAvailable;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * True when every rate and available amount fits in the fixed-point columns
+     * (rates with scale up to {@value #MAX_RATE_SCALE}, amounts exact in pence).
+     */
+    boolean isFixedPoint() {
+        return rates != null;
+    }
+
+    /**
+     * Scale of the fixed-point rates, the biggest scale of the rates in the market.
+     */
+    int getRateScale() {
+        return rateScale;
+    }
+
+    /**
+     * @param index
+     * @return rate unscaled at {@link #getRateScale()}
+     */
+    long getFixedRate(int index) {
+        return rates[index];
+    }
+
+    /**
+     * @param index
+     * @return scale of the rate as it was given
+     */
+    int getRateScale(int index) {
+        return rateScales[index];
+    }
+
+    /**
+     * @param index
+     * @return available in pence
+     */
+    long getFixedAvailable(int index) {
+        return available[index];
+    }
+
+    /**
+     * @param amount
+     * @return amount in pence
+     * @throws ArithmeticException when the amount has fractions of pence or does not fit in a long
+     */
+    static long toPence(BigDecimal amount) {
+        return amount.setScale(AMOUNT_SCALE, BigDecimal.ROUND_UNNECESSARY).unscaledValue().longValueExact();
+    }
+
+    @Override
+    public Iterator<LenderData> iterator() {
+        return Arrays.asList(lenders).iterator();
+    }
+}
@@ -0,0 +1,213 @@
+package org.zopa.loanprovider;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * Hot reload of the market data file.
+ * A background thread watches the file and its {@link DeltaLog}; when one of them changes the file is read again and compared with the current market
+ * (lenders are identified by name): only lenders added, removed or changed are applied to the current snapshot
+ * (see {@link MarketSnapshot#withChanges}).
+ * Then the new snapshot is published to the quote engine in a single swap, so quotes never see a half-loaded market
+ * and never wait for the reload.
+ * Events are debounced: the file is read once no event has arrived for {@value #DEBOUNCE_MILLIS} ms.
+ * The file is read as at start-up (same loaders), so a CSV file written in place may be read half written when
+ * the writer pauses longer than that: the safe update is to write a temporary file and move it into place (atomic rename).
+ * When the file can not be read (e.g. a corrupted line or binary checksum) the current market is kept.
+ * Markets with repeated lender names can not be compared by name, so they are rebuilt completely.
+ */
+public class MarketWatcher implements AutoCloseable {
+
+    static final long DEBOUNCE_MILLIS = 200;
+
+    private final Path marketFile;
+    private final Path deltaLogFile;
+    private final QuoteEngine engine;
+    private MarketSnapshot market;
+    private Map<String, LenderData> lenders;
+    private WatchService watchService;
+    private Thread watcherThread;
+
+    /**
+     * Changes are applied to the market of the engine (loaded from the file).
+     *
+     * @param marketFile
+     * @param engine
+     */
+    public MarketWatcher(Path marketFile, QuoteEngine engine) {
+        this.marketFile = marketFile.toAbsolutePath();
+        this.deltaLogFile = DeltaLog.pathFor(this.marketFile.toString());
+        this.engine = engine;
+        this.market = engine.getMarket();
+        this.lenders = byName(market);
+    }
+
+    /**
+     * Start watching the file in a background (daemon) thread.
+     *
+     * @throws IOException
+     */
+    public synchronized void start() throws IOException {
+        watchService = FileSystems.getDefault().newWatchService();
+        marketFile.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        watcherThread = new Thread(this::watch, "market-watcher");
+        watcherThread.setDaemon(true);
+        watcherThread.start();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+        }
+    }
+
+    /**
+     * Read the file again and apply the differences with the current market.
+     *
+     * @return changes applied
+     * @throws IOException
+     */
+    public synchronized Changes reload() throws IOException {
+        List<LenderData> marketData = DeltaLog.load(marketFile.toString());
+        Map<String, LenderData> newLenders = byName(marketData);
+        Changes changes = new Changes();
+
+        if (lenders == null || newLenders == null) {
+            market = MarketSnapshot.of(marketData);
+            changes.rebuilt = true;
+        } else {
+            List<LenderData> removed = new ArrayList<>();
+            List<LenderData> added = new ArrayList<>();
+            for (LenderData current : lenders.values()) {
+                LenderData updated = newLenders.get(current.getName());
+                if (updated == null) {
+                    removed.add(current);
+                    changes.removed++;
+                } else if (current.getRate().compareTo(updated.getRate()) != 0
+                        || current.getAvailable().compareTo(updated.getAvailable()) != 0) {
+                    removed.add(current);
+                    added.add(updated);
+                    changes.changed++;
+                } else {
+                    // Same lender, keep the current instance
+                    newLenders.put(current.getName(), current);
+                }
+            }
+            for (LenderData updated : newLenders.values()) {
+                if (!lenders.containsKey(updated.getName())) {
+                    added.add(updated);
+                    changes.added++;
+                }
+            }
+            if (changes.hasChanges()) {
+                market = market.withChanges(removed, added);
+            }
+        }
+        lenders = newLenders;
+
+        if (changes.hasChanges()) {
+            engine.publish(market);
+        }
+        return changes;
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean marketChanged = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (marketFile.getFileName().equals(event.context()) || deltaLogFile.getFileName().equals(event.context())) {
+                        marketChanged = true;
+                    }
+                }
+                key.reset();
+                if (marketChanged) {
+                    debounce();
+                    reloadSafely();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Watcher closed
+        }
+    }
+
+    /**
+     * Wait until no event arrives for {@value #DEBOUNCE_MILLIS} ms (the file may be written in several steps).
+     */
+    private void debounce() throws InterruptedException {
+        WatchKey key;
+        while ((key = watchService.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+            key.pollEvents();
+            key.reset();
+        }
+    }
+
+    private void reloadSafely() {
+        try {
+            reload();
+        } catch (IOException e) {
+            Printer.printError("Error loading market data");
+        } catch (RuntimeException e) {
+            Printer.printError(format("Market data not reloaded: {0}", e.getMessage()));
+        }
+    }
+
+    /**
+     * @return lenders by name, or null when names are repeated
+     */
+    private static Map<String, LenderData> byName(Iterable<LenderData> marketData) {
+        Map<String, LenderData> lenders = new HashMap<>();
+        for (LenderData lenderData : marketData) {
+            if (lenders.put(lenderData.getName(), lenderData) != null) {
+                return null;
+            }
+        }
+        return lenders;
+    }
+
+    /**
+     * Number of lenders changed by a reload.
+     */
+    public static class Changes {
+
+        private int added;
+        private int removed;
+        private int changed;
+        private boolean rebuilt;
+
+        public int getAdded() {
+            return added;
+        }
+
+        public int getRemoved() {
+            return removed;
+        }
+
+        public int getChanged() {
+            return changed;
+        }
+
+        public boolean isRebuilt() {
+            return rebuilt;
+        }
+
+        public boolean hasChanges() {
+            return rebuilt || added > 0 || removed > 0 || changed > 0;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package org.zopa.loanprovider;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * How the lenders of a loan are chosen, and how much each one gives.
+ * The strategy builds the index it needs once per market ({@link #index(MarketSnapshot)}),
+ * so quotes never sort the market again. Used by {@link LoanProcessor}, which calculates the rate
+ * (money-weighted, shares rounded up to 4 decimals) and the payments for the lenders matched.
+ */
+public interface MatchingStrategy {
+
+    /**
+     * Build the index of the strategy over the market.
+     *
+     * @param market
+     * @return matcher safe to share between threads
+     */
+    Matcher index(MarketSnapshot market);
+
+    /**
+     * Lenders matching over one market.
+     */
+    interface Matcher {
+
+        /**
+         * @param amountRequested
+         * @return amount given by each lender, or empty when the market can not give the amount
+         */
+        Optional<Map<LenderData, BigDecimal>> match(BigDecimal amountRequested);
+    }
+}
@@ -0,0 +1,229 @@
+package org.zopa.loanprovider;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * Quotes over a market partitioned by rate range across {@link PartitionWorker}s (usually other processes).
+ * Workers are given cheapest range first. Each quote is a scatter-gather in two rounds:
+ * 1. the total available of every partition, to know which ones the amount reaches and what is left for each one.
+ * 2. the sum of share x rate of those partitions, added up here.
+ * The rate and loan are exactly the ones {@link LoanProcessor} gives over the whole market
+ * (without the lender allocation, lenders are not sent back by the workers).
+ * Each partition has one connection, quotes from several threads wait for it in turn.
+ * A connection failing in the middle of a request (e.g. a reply not received in time) is closed and never reused,
+ * a late reply could be taken as the one of the next request: the next request connects again.
+ */
+public class PartitionCoordinator implements AutoCloseable {
+
+    private static final int READ_TIMEOUT_MILLIS = 30_000;
+
+    private final List<Partition> partitions = new ArrayList<>();
+    private final ExecutorService executor;
+    private final AmortizationMethod amortizationMethod;
+
+    /**
+     * @param workers            addresses of the workers, cheapest rate range first
+     * @param amortizationMethod
+     * @throws IOException when a worker can not be reached
+     */
+    public PartitionCoordinator(List<InetSocketAddress> workers, AmortizationMethod amortizationMethod) throws IOException {
+        this(workers, amortizationMethod, READ_TIMEOUT_MILLIS);
+    }
+
+    PartitionCoordinator(List<InetSocketAddress> workers, AmortizationMethod amortizationMethod, int readTimeoutMillis) throws IOException {
+        if (workers.isEmpty()) {
+            throw new IllegalArgumentException("At least one partition worker is required");
+        }
+        this.amortizationMethod = amortizationMethod;
+        this.executor = Executors.newFixedThreadPool(workers.size(), runnable -> {
+            Thread thread = new Thread(runnable, "partition-coordinator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            for (InetSocketAddress worker : workers) {
+                partitions.add(new Partition(worker, readTimeoutMillis));
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    public Optional<Loan> findLoanFor(BigDecimal amount, int months) throws IOException {
+        List<BigDecimal> totals = scatter(partitions.size(), i -> partitions.get(i).getTotalAvailable());
+
+        // Amount left to collect when each partition is reached
+        List<BigDecimal> limits = new ArrayList<>();
+        BigDecimal rest = amount;
+        for (int i = 0; i < totals.size() && rest.signum() > 0; i++) {
+            limits.add(rest);
+            rest = rest.subtract(rest.min(totals.get(i)));
+        }
+        if (rest.signum() > 0) {
+            return Optional.empty();
+        }
+
+        BigDecimal loanRate = scatter(limits.size(), i -> partitions.get(i).getWeightedShares(amount, limits.get(i)))
+                .stream()
+                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        BigDecimal monthtlyPayment = amortizationMethod.calculateMonthlyPayment(loanRate, amount, months);
+        BigDecimal totalRepayment = monthtlyPayment.multiply(BigDecimal.valueOf(months));
+        return Optional.of(new Loan(amount, loanRate, monthtlyPayment, totalRepayment));
+    }
+
+    public BigDecimal getTotalAvailable() throws IOException {
+        return scatter(partitions.size(), i -> partitions.get(i).getTotalAvailable())
+                .stream()
+                .reduce(BigDecimal.ZERO, BigDecimal::add);
+    }
+
+    @Override
+    public void close() {
+        for (Partition partition : partitions) {
+            partition.close();
+        }
+        executor.shutdown();
+    }
+
+    /**
+     * Call the first partitions given in parallel.
+     *
+     * @return results in partition order
+     */
+    private <T> List<T> scatter(int count, PartitionCall<T> call) throws IOException {
+        List<Future<T>> futures = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            final int partition = i;
+            futures.add(executor.submit(() -> call.apply(partition)));
+        }
+        List<T> results = new ArrayList<>();
+        try {
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for partition workers");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause().getMessage());
+        }
+        return results;
+    }
+
+    @FunctionalInterface
+    private interface PartitionCall<T> {
+        T apply(int partition) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface RequestWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private static final class Partition {
+
+        private final InetSocketAddress address;
+        private final int readTimeoutMillis;
+        // Null once the connection failed, until the next request
+        private volatile Socket socket;
+        private DataInputStream in;
+        private DataOutputStream out;
+
+        Partition(InetSocketAddress address, int readTimeoutMillis) throws IOException {
+            this.address = address;
+            this.readTimeoutMillis = readTimeoutMillis;
+            connect();
+        }
+
+        synchronized BigDecimal getTotalAvailable() throws IOException {
+            return request(out -> out.writeByte(PartitionWorker.TOTAL));
+        }
+
+        synchronized BigDecimal getWeightedShares(BigDecimal amountRequested, BigDecimal limit) throws IOException {
+            // Checked before writing anything, the request would be left half written otherwise
+            if (!DecimalCodec.fits(amountRequested) || !DecimalCodec.fits(limit)) {
+                throw new IllegalArgumentException(format("Amount {0} can not be sent to partition worker {1}", amountRequested.toString(), address.toString()));
+            }
+            return request(out -> {
+                out.writeByte(PartitionWorker.SHARES);
+                DecimalCodec.write(out, amountRequested);
+                DecimalCodec.write(out, limit);
+            });
+        }
+
+        void close() {
+            Socket current = socket;
+            socket = null;
+            if (current != null) {
+                try {
+                    current.close();
+                } catch (IOException e) {
+                    // Already closed
+                }
+            }
+        }
+
+        private void connect() throws IOException {
+            Socket connection = new Socket();
+            try {
+                connection.connect(address, readTimeoutMillis);
+                connection.setTcpNoDelay(true);
+                connection.setSoTimeout(readTimeoutMillis);
+                this.in = new DataInputStream(new BufferedInputStream(connection.getInputStream()));
+                this.out = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()));
+                out.writeInt(PartitionWorker.MAGIC);
+                out.writeByte(PartitionWorker.VERSION);
+                out.flush();
+            } catch (IOException e) {
+                connection.close();
+                throw new IOException(format("Error connecting to partition worker {0}", address.toString()), e);
+            }
+            this.socket = connection;
+        }
+
+        private BigDecimal request(RequestWriter request) throws IOException {
+            if (socket == null) {
+                connect();
+            }
+            try {
+                request.write(out);
+                out.flush();
+                return readResult();
+            } catch (IOException e) {
+                // The stream may be in the middle of a request or a reply: never reused
+                close();
+                throw e;
+            }
+        }
+
+        private BigDecimal readResult() throws IOException {
+            if (in.readByte() == PartitionWorker.ERROR) {
+                throw new ArithmeticException(format("Partition worker {0}: {1}", address.toString(), in.readUTF()));
+            }
+            return DecimalCodec.read(in);
+        }
+    }
+}
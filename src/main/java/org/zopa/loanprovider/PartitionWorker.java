@@ -0,0 +1,190 @@
+package org.zopa.loanprovider;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Quote worker owning one rate range of the market: the lenders with a rate from the lower rate (included)
+ * to the upper rate (excluded), any of them unbounded when null.
+ * Answers the aggregates a {@link PartitionCoordinator} needs over plain sockets, with a compact binary protocol
+ * (decimals encoded with {@link DecimalCodec}):
+ * connection: magic (int) + version (byte).
+ * Request: operation (byte) + arguments. Response: status (byte) + result, or the error message (UTF).
+ * TOTAL: total available of the partition.
+ * SHARES [amount requested] [limit]: sum of share x rate of the cheapest lenders of the partition until the limit
+ * is collected, shares of the amount requested rounded up to 4 decimals (as {@link LoanProcessor} does).
+ * Each connection is handled by its own (daemon) thread, the requests of a connection one after another.
+ * There is no authentication: by default the worker only listens on the loopback address,
+ * other addresses must only be reachable by the coordinators. Decimals received are bounded (see {@link DecimalCodec}).
+ */
+public class PartitionWorker implements AutoCloseable {
+
+    static final int MAGIC = 0x4C505057;
+    static final byte VERSION = 1;
+
+    static final byte TOTAL = 1;
+    static final byte SHARES = 2;
+
+    static final byte OK = 0;
+    static final byte ERROR = 1;
+
+    private final MarketSnapshot market;
+    private final ServerSocket serverSocket;
+
+    /**
+     * Listening on the loopback address.
+     *
+     * @param marketData lenders of the partition
+     * @param port       0 to listen on any free port
+     * @throws IOException
+     */
+    public PartitionWorker(List<LenderData> marketData, int port) throws IOException {
+        this(marketData, InetAddress.getLoopbackAddress(), port);
+    }
+
+    /**
+     * @param marketData lenders of the partition
+     * @param address    address to listen on
+     * @param port       0 to listen on any free port
+     * @throws IOException
+     */
+    public PartitionWorker(List<LenderData> marketData, InetAddress address, int port) throws IOException {
+        this.market = MarketSnapshot.of(marketData);
+        this.serverSocket = new ServerSocket(port, 0, address);
+    }
+
+    /**
+     * Read the lenders of the rate range from a CSV or binary market data file (delta logs are not replayed).
+     * Only the lenders of the range are kept in memory.
+     *
+     * @param filePath
+     * @param lowerRate included, or null
+     * @param upperRate excluded, or null
+     * @return
+     * @throws IOException
+     */
+    public static List<LenderData> loadPartition(String filePath, BigDecimal lowerRate, BigDecimal upperRate) throws IOException {
+        Stream<LenderData> marketData = BinaryMarketFile.isBinary(filePath)
+                ? BinaryMarketFile.stream(filePath)
+                : FileReader.streamMarketData(filePath);
+        try (Stream<LenderData> lenders = marketData) {
+            return lenders
+                    .filter(lenderData -> lowerRate == null || lenderData.getRate().compareTo(lowerRate) >= 0)
+                    .filter(lenderData -> upperRate == null || lenderData.getRate().compareTo(upperRate) < 0)
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Start accepting connections in a background (daemon) thread.
+     */
+    public void start() {
+        Thread acceptThread = new Thread(this::accept, "partition-worker");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+    }
+
+    /**
+     * @return port listening (useful when started on port 0)
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public MarketSnapshot getMarket() {
+        return market;
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+    }
+
+    /**
+     * Sum of share x rate of the cheapest lenders until the limit is collected.
+     * Walks all the lenders of the partition when the limit is above its total available.
+     *
+     * @param amountRequested amount of the whole loan
+     * @param limit           amount still to collect when this partition is reached
+     * @return
+     */
+    BigDecimal calculateWeightedShares(BigDecimal amountRequested, BigDecimal limit) {
+        BigDecimal collected = BigDecimal.ZERO;
+        BigDecimal weightedShares = BigDecimal.ZERO;
+        for (int i = 0; i < market.size() && collected.compareTo(limit) < 0; i++) {
+            LenderData lenderData = market.get(i);
+            BigDecimal borrowed = lenderData.getAvailable().min(limit.subtract(collected));
+            collected = collected.add(borrowed);
+            weightedShares = weightedShares.add(LoanProcessor.weightedShare(lenderData, borrowed, amountRequested));
+        }
+        return weightedShares;
+    }
+
+    private void accept() {
+        try {
+            while (true) {
+                Socket socket = serverSocket.accept();
+                Thread connectionThread = new Thread(() -> serve(socket), "partition-worker-connection");
+                connectionThread.setDaemon(true);
+                connectionThread.start();
+            }
+        } catch (IOException e) {
+            // Worker closed
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (Socket connection = socket) {
+            connection.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(connection.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()));
+            if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+                return;
+            }
+            while (true) {
+                byte operation;
+                try {
+                    operation = in.readByte();
+                } catch (EOFException e) {
+                    // Connection closed by the coordinator
+                    return;
+                }
+                handle(operation, in, out);
+                out.flush();
+            }
+        } catch (IOException e) {
+            // Connection lost
+        }
+    }
+
+    private void handle(byte operation, DataInputStream in, DataOutputStream out) throws IOException {
+        try {
+            BigDecimal result;
+            if (operation == TOTAL) {
+                result = market.getTotalAvailable();
+            } else if (operation == SHARES) {
+                BigDecimal amountRequested = DecimalCodec.read(in);
+                BigDecimal limit = DecimalCodec.read(in);
+                result = calculateWeightedShares(amountRequested, limit);
+            } else {
+                throw new IOException("Unknown operation " + operation);
+            }
+            out.writeByte(OK);
+            DecimalCodec.write(out, result);
+        } catch (ArithmeticException e) {
+            out.writeByte(ERROR);
+            out.writeUTF(String.valueOf(e.getMessage()));
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package org.zopa.loanprovider;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Matcher taking lenders in a fixed order: all of them fully but the last one, which gives the rest.
+ * Cumulative available is kept for each lender, so the lenders taken are found with a binary search (O(log n))
+ * and only them are visited.
+ */
+final class PrefixMatcher implements MatchingStrategy.Matcher {
+
+    private final LenderData[] lenders;
+    private final BigDecimal[] cumulativeAvailable;
+
+    /**
+     * @param lenders in the order they are taken (not copied)
+     */
+    PrefixMatcher(LenderData[] lenders) {
+        this.lenders = lenders;
+        this.cumulativeAvailable = new BigDecimal[lenders.length + 1];
+        cumulativeAvailable[0] = BigDecimal.ZERO;
+        for (int i = 0; i < lenders.length; i++) {
+            cumulativeAvailable[i + 1] = cumulativeAvailable[i].add(lenders[i].getAvailable());
+        }
+    }
+
+    @Override
+    public Optional<Map<LenderData, BigDecimal>> match(BigDecimal amountRequested) {
+        if (cumulativeAvailable[lenders.length].compareTo(amountRequested) < 0) {
+            return Optional.empty();
+        }
+        // First lenders whose cumulative available is below the amount, the next one gives the rest
+        int low = 0;
+        int high = lenders.length;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (cumulativeAvailable[middle].compareTo(amountRequested) < 0) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        Map<LenderData, BigDecimal> lendersCollector = new HashMap<>();
+        for (int i = 0; i < low; i++) {
+            lendersCollector.put(lenders[i], lenders[i].getAvailable());
+        }
+        if (low < lenders.length && amountRequested.compareTo(cumulativeAvailable[low]) > 0) {
+            lendersCollector.put(lenders[low], amountRequested.subtract(cumulativeAvailable[low]));
+        }
+        return Optional.of(lendersCollector);
+    }
+}
@@ -0,0 +1,104 @@
+package org.zopa.loanprovider;
+
+import java.math.BigDecimal;
+import java.util.Optional;
+
+/**
+ * Cumulative sums over a market sorted by {@link LoanComparator#byRate}:
+ * cumulative available and cumulative (rate x available).
+ * Any amount is answered with a binary search plus the part taken from one lender, in O(log n).
+ * The rate is the exact money-weighted rate (rounded up to {@link #RATE_SCALE} decimals):
+ * unlike the lenders walk of {@link LoanProcessor} the share of each lender is not rounded,
+ * so rates can be lower than it below the fourth decimal of each share.
+ * Immutable, safe to share between threads.
+ */
+public class PrefixSumIndex {
+
+    static final int RATE_SCALE = 8;
+
+    private final MarketSnapshot market;
+    // Position i holds the sum of the first i lenders
+    private final BigDecimal[] cumulativeAvailable;
+    private final BigDecimal[] cumulativeWeightedRate;
+
+    public PrefixSumIndex(MarketSnapshot market) {
+        this.market = market;
+        this.cumulativeAvailable = new BigDecimal[market.size() + 1];
+        this.cumulativeWeightedRate = new BigDecimal[market.size() + 1];
+        cumulativeAvailable[0] = BigDecimal.ZERO;
+        cumulativeWeightedRate[0] = BigDecimal.ZERO;
+        for (int i = 0; i < market.size(); i++) {
+            LenderData lenderData = market.get(i);
+            cumulativeAvailable[i + 1] = cumulativeAvailable[i].add(lenderData.getAvailable());
+            cumulativeWeightedRate[i + 1] = cumulativeWeightedRate[i].add(lenderData.getRate().multiply(lenderData.getAvailable()));
+        }
+    }
+
+    public MarketSnapshot getMarket() {
+        return market;
+    }
+
+    public BigDecimal getTotalAvailable() {
+        return cumulativeAvailable[market.size()];
+    }
+
+    /**
+     * Money-Weighted Rate for the amount.
+     *
+     * @param amountRequested
+     * @return the rate, or empty when there are not sufficient offers
+     */
+    public Optional<BigDecimal> calculateShareRate(BigDecimal amountRequested) {
+        if (getTotalAvailable().compareTo(amountRequested) < 0) {
+            return Optional.empty();
+        }
+        int taken = lendersBelow(amountRequested);
+        BigDecimal weightedRate = cumulativeWeightedRate[taken];
+        if (taken < market.size()) {
+            BigDecimal borrowed = amountRequested.subtract(cumulativeAvailable[taken]);
+            weightedRate = weightedRate.add(borrowed.multiply(market.get(taken).getRate()));
+        }
+        try {
+            return Optional.of(weightedRate.divide(amountRequested, RATE_SCALE, BigDecimal.ROUND_CEILING));
+        } catch (ArithmeticException e) {
+            throw new ArithmeticException("Error calculating money-weighted rate");
+        }
+    }
+
+    /**
+     * @param lenders number of cheapest lenders
+     * @return sum of rate x available of the cheapest lenders given
+     */
+    BigDecimal getWeightedRate(int lenders) {
+        return cumulativeWeightedRate[lenders];
+    }
+
+    /**
+     * @param lenders number of cheapest lenders
+     * @return total available of the cheapest lenders given
+     */
+    BigDecimal getCumulativeAvailable(int lenders) {
+        return cumulativeAvailable[lenders];
+    }
+
+    /**
+     * Number of lenders fully taken for the amount: the first ones whose cumulative available is below it.
+     * The next lender (if any) gives the rest.
+     *
+     * @param amount
+     * @return
+     */
+    public int lendersBelow(BigDecimal amount) {
+        int low = 0;
+        int high = market.size();
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (cumulativeAvailable[middle].compareTo(amount) < 0) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+}
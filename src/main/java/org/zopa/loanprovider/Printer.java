@@ -1,6 +1,8 @@
 package org.zopa.loanprovider;
 
 import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
 
 import static java.text.MessageFormat.format;
@@ -11,24 +13,53 @@ import static java.text.MessageFormat.format;
  */
 public class Printer {
 
+    private static final String LOAN_NOT_POSSIBLE = "The market does not have sufficient offers from lenders to satisfy the loan";
+
     private static void printLoanNotPossible() {
-        System.out.println("The market does not have sufficient offers from lenders to satisfy the loan");
+        System.out.println(LOAN_NOT_POSSIBLE);
     }
 
     private static void printLoan(Loan loan) {
+        loanLines(loan).forEach(System.out::println);
+    }
+
+    private static List<String> loanLines(Loan loan) {
         BigDecimal rate = loan.getRate().multiply(BigDecimal.valueOf(100)).setScale(1, BigDecimal.ROUND_FLOOR);
         BigDecimal monthlyPayment = loan.getMonthlyRepayment().setScale(2, BigDecimal.ROUND_CEILING);
         BigDecimal totalRepayment = loan.getTotalRepayment().setScale(2, BigDecimal.ROUND_CEILING);
-        System.out.println(format("Requested amount: £{0}", loan.getRequestedAmount().toString()));
-        System.out.println(format("Rate: {0}%", rate.toString()));
-        System.out.println(format("Monthly repayment: £{0}", monthlyPayment.toString()));
-        System.out.println(format("Total repayment: £{0}", totalRepayment.toString()));
+        return Arrays.asList(
+                format("Requested amount: £{0}", loan.getRequestedAmount().toString()),
+                format("Rate: {0}%", rate.toString()),
+                format("Monthly repayment: £{0}", monthlyPayment.toString()),
+                format("Total repayment: £{0}", totalRepayment.toString()));
     }
 
     public static void printError(String message) {
         System.err.println(format(message));
     }
 
+    /**
+     * Same text printed by {@link #printResult(Optional)}, one message per line.
+     *
+     * @param loan
+     * @return
+     */
+    public static String formatResult(Optional<Loan> loan) {
+        if (loan.isPresent()) {
+            return String.join(System.lineSeparator(), loanLines(loan.get())) + System.lineSeparator();
+        } else {
+            return LOAN_NOT_POSSIBLE + System.lineSeparator();
+        }
+    }
+
+    public static void printMessage(String message) {
+        System.out.println(message);
+    }
+
+    public static void printReport(String report) {
+        System.out.print(report);
+    }
+
     public static void printResult(Optional<Loan> loan) {
         if (loan.isPresent()) {
             printLoan(loan.get());
@@ -0,0 +1,84 @@
+package org.zopa.loanprovider;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Pro-rata across all the lenders with a rate up to a cap: each one gives the part of the loan
+ * its available is of the total available under the cap.
+ * Amounts are rounded down to pence over the cumulative available (the part of lender i is
+ * floor(amount x cumulative(i + 1) / total) - floor(amount x cumulative(i) / total)),
+ * so they always add up to the amount and never go over the available of a lender.
+ * The market is sorted by rate, so the lenders under the cap are found once with a binary search
+ * and their cumulative available is kept in the index.
+ */
+public class ProRataStrategy implements MatchingStrategy {
+
+    private static final int AMOUNT_SCALE = 2;
+
+    private final BigDecimal rateCap;
+
+    /**
+     * @param rateCap highest rate taken
+     */
+    public ProRataStrategy(BigDecimal rateCap) {
+        this.rateCap = rateCap;
+    }
+
+    @Override
+    public Matcher index(MarketSnapshot market) {
+        int lenders = lendersUnder(market, rateCap);
+        BigDecimal[] cumulativeAvailable = new BigDecimal[lenders + 1];
+        cumulativeAvailable[0] = BigDecimal.ZERO;
+        for (int i = 0; i < lenders; i++) {
+            cumulativeAvailable[i + 1] = cumulativeAvailable[i].add(market.get(i).getAvailable());
+        }
+        BigDecimal totalAvailable = cumulativeAvailable[lenders];
+
+        return amountRequested -> {
+            if (totalAvailable.compareTo(amountRequested) < 0) {
+                return Optional.empty();
+            }
+            Map<LenderData, BigDecimal> lendersCollector = new HashMap<>();
+            if (totalAvailable.signum() == 0) {
+                return Optional.of(lendersCollector);
+            }
+            int scale = Math.max(AMOUNT_SCALE, amountRequested.scale());
+            BigDecimal previous = BigDecimal.ZERO;
+            for (int i = 0; i < lenders; i++) {
+                BigDecimal cumulative = amountRequested.multiply(cumulativeAvailable[i + 1])
+                        .divide(totalAvailable, scale, BigDecimal.ROUND_FLOOR);
+                BigDecimal borrowed = cumulative.subtract(previous);
+                if (borrowed.signum() > 0) {
+                    lendersCollector.put(market.get(i), borrowed);
+                }
+                previous = cumulative;
+            }
+            return Optional.of(lendersCollector);
+        };
+    }
+
+    /**
+     * @param market
+     * @param rateCap
+     * @return number of lenders of the market (cheapest first) with a rate up to the cap, all of them when null
+     */
+    static int lendersUnder(MarketSnapshot market, BigDecimal rateCap) {
+        if (rateCap == null) {
+            return market.size();
+        }
+        int low = 0;
+        int high = market.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (market.get(middle).getRate().compareTo(rateCap) <= 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,129 @@
+package org.zopa.loanprovider;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import java.math.BigDecimal;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Cache of quotes (loan, or empty when there are not sufficient offers) by market version, amount and months.
+ * A new market gets a new version (see {@link MarketSnapshot#getVersion()}), so its quotes never hit
+ * the entries of the previous one. Loans keep their allocation, which references the whole market,
+ * so the entries of old markets are dropped when a new one is published (see {@link #retainVersion(long)}).
+ * Amounts are cached as given, so 1000 and 1000.00 are different entries (their loans have different requested amounts).
+ * Bounded (least recently used entries are evicted) and thread-safe: concurrent misses for the same quote calculate it once.
+ * With pre-warm, all the valid amounts for the default term are quoted when a new market is loaded in a {@link QuoteEngine}.
+ */
+public class QuoteCache {
+
+    public static final long DEFAULT_MAXIMUM_SIZE = 10_000;
+
+    private final Cache<QuoteKey, Optional<Loan>> quotes;
+    private final boolean prewarm;
+
+    public QuoteCache() {
+        this(DEFAULT_MAXIMUM_SIZE, false);
+    }
+
+    public QuoteCache(long maximumSize, boolean prewarm) {
+        this.quotes = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .recordStats()
+                .build();
+        this.prewarm = prewarm;
+    }
+
+    /**
+     * Cached quote of the processor, calculated when missing.
+     *
+     * @param processor
+     * @param amount
+     * @param months
+     * @return
+     */
+    public Optional<Loan> findLoanFor(LoanProcessor processor, BigDecimal amount, int months) {
+        QuoteKey key = new QuoteKey(processor.getMarket().getVersion(), amount, months);
+        try {
+            return quotes.get(key, () -> processor.findLoanFor(amount, months));
+        } catch (UncheckedExecutionException | ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause().getMessage());
+        }
+    }
+
+    /**
+     * Quote all the valid amounts (from {@value Main#MIN_AMOUNT} to {@value Main#MAX_AMOUNT}, 100 increment)
+     * for the default term.
+     *
+     * @param processor
+     */
+    public void prewarm(LoanProcessor processor) {
+        for (int amount = Main.MIN_AMOUNT; amount <= Main.MAX_AMOUNT; amount += 100) {
+            findLoanFor(processor, BigDecimal.valueOf(amount), Main.DEFAULT_MONTHS);
+        }
+    }
+
+    /**
+     * Drop the quotes of any other market version.
+     * Quotes of an old market still in flight may add some entries back, they are dropped on the next call.
+     *
+     * @param version version of the current market
+     */
+    public void retainVersion(long version) {
+        quotes.asMap().keySet().removeIf(key -> key.version != version);
+    }
+
+    public boolean isPrewarm() {
+        return prewarm;
+    }
+
+    /**
+     * Hits, misses and evictions since the cache was created.
+     *
+     * @return
+     */
+    public CacheStats getStats() {
+        return quotes.stats();
+    }
+
+    public long size() {
+        return quotes.size();
+    }
+
+    private static final class QuoteKey {
+
+        private final long version;
+        private final BigDecimal amount;
+        private final int months;
+
+        QuoteKey(long version, BigDecimal amount, int months) {
+            this.version = version;
+            this.amount = amount;
+            this.months = months;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof QuoteKey)) {
+                return false;
+            }
+            QuoteKey other = (QuoteKey) o;
+            return version == other.version && months == other.months && amount.equals(other.amount);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(version, amount, months);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package org.zopa.loanprovider;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Quoting over a shared market for any number of threads.
+ * The market is an immutable snapshot published through a volatile reference:
+ * quotes read it once and never lock nor copy the market data.
+ * A new market can be published at any time, quotes in flight keep using the snapshot they started with.
+ * The amortization method must be thread-safe (all methods provided are).
+ * With a {@link QuoteCache} quotes are cached by market version; a new market is pre-warmed (when the cache does)
+ * before it is published, so quotes never wait for it.
+ */
+public class QuoteEngine {
+
+    private final AmortizationMethod amortizationMethod;
+    private final QuoteCache cache;
+    private volatile LoanProcessor processor;
+
+    public QuoteEngine(List<LenderData> marketData, AmortizationMethod amortizationMethod) {
+        this(MarketSnapshot.of(marketData), amortizationMethod);
+    }
+
+    public QuoteEngine(MarketSnapshot market, AmortizationMethod amortizationMethod) {
+        this(market, amortizationMethod, null);
+    }
+
+    /**
+     * @param market
+     * @param amortizationMethod
+     * @param cache              or null to quote without cache
+     */
+    public QuoteEngine(MarketSnapshot market, AmortizationMethod amortizationMethod, QuoteCache cache) {
+        this.amortizationMethod = amortizationMethod;
+        this.cache = cache;
+        this.processor = newProcessor(market);
+    }
+
+    public Optional<Loan> findLoanFor(BigDecimal amount, int months) {
+        LoanProcessor current = processor;
+        return cache == null ? current.findLoanFor(amount, months) : cache.findLoanFor(current, amount, months);
+    }
+
+    /**
+     * Replace the market used for next quotes.
+     *
+     * @param market
+     */
+    public void publish(MarketSnapshot market) {
+        processor = newProcessor(market);
+        if (cache != null) {
+            // Cached loans reference their market: don't keep old markets reachable
+            cache.retainVersion(market.getVersion());
+        }
+    }
+
+    public MarketSnapshot getMarket() {
+        return processor.getMarket();
+    }
+
+    /**
+     * @return the cache, or null when quotes are not cached
+     */
+    public QuoteCache getCache() {
+        return cache;
+    }
+
+    private LoanProcessor newProcessor(MarketSnapshot market) {
+        LoanProcessor newProcessor = new LoanProcessor(market, amortizationMethod);
+        if (cache != null && cache.isPrewarm()) {
+            cache.prewarm(newProcessor);
+        }
+        return newProcessor;
+    }
+}
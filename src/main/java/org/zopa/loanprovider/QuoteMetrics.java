@@ -0,0 +1,130 @@
+package org.zopa.loanprovider;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Metrics of the quote hot path: latency histograms (nanoseconds) of market data reads, quotes, lender collection
+ * and amortization, and the number of lenders scanned per quote.
+ * Disabled by default (enabled with -D{@value #ENABLED_PROPERTY}=true or {@link #setEnabled}).
+ * When disabled the instrumented code only reads a volatile flag: no clock reads and no allocation.
+ * When enabled, recording is lock-free and allocation-free too (see {@link Histogram}).
+ * Exposed through JMX ({@link #registerMBeans}) and as text ({@link #report}, {@link #startReporter}).
+ */
+public final class QuoteMetrics {
+
+    public static final String ENABLED_PROPERTY = "loanprovider.metrics";
+
+    public static final Histogram FILE_READ = new Histogram("fileRead");
+    public static final Histogram QUOTE = new Histogram("quote");
+    public static final Histogram LENDER_COLLECTION = new Histogram("lenderCollection");
+    public static final Histogram AMORTIZATION = new Histogram("amortization");
+    public static final Histogram LENDERS_SCANNED = new Histogram("lendersScanned");
+
+    private static final List<Histogram> HISTOGRAMS = Arrays.asList(FILE_READ, QUOTE, LENDER_COLLECTION, AMORTIZATION, LENDERS_SCANNED);
+    private static final long NOT_STARTED = Long.MIN_VALUE;
+
+    private static volatile boolean enabled = Boolean.getBoolean(ENABLED_PROPERTY);
+
+    private QuoteMetrics() {
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        QuoteMetrics.enabled = enabled;
+    }
+
+    /**
+     * Start timing an operation.
+     *
+     * @return start time to give to {@link #recordSince}
+     */
+    static long start() {
+        return enabled ? System.nanoTime() : NOT_STARTED;
+    }
+
+    /**
+     * Record the time elapsed since {@link #start}. Nothing is recorded if metrics were disabled on start.
+     *
+     * @param histogram
+     * @param start
+     */
+    static void recordSince(Histogram histogram, long start) {
+        if (start != NOT_STARTED) {
+            histogram.record(System.nanoTime() - start);
+        }
+    }
+
+    static void record(Histogram histogram, long value) {
+        if (enabled) {
+            histogram.record(value);
+        }
+    }
+
+    public static void reset() {
+        HISTOGRAMS.forEach(Histogram::reset);
+    }
+
+    /**
+     * One line per histogram: count, mean, median, 99th, 99.9th percentiles and max.
+     *
+     * @return
+     */
+    public static String report() {
+        StringBuilder report = new StringBuilder();
+        for (Histogram histogram : HISTOGRAMS) {
+            report.append(String.format(Locale.ROOT, "%-17s count=%d mean=%.1f p50=%d p99=%d p999=%d max=%d%n",
+                    histogram.getName(), histogram.getCount(), histogram.getMean(), histogram.getMedian(),
+                    histogram.get99thPercentile(), histogram.get999thPercentile(), histogram.getMax()));
+        }
+        return report.toString();
+    }
+
+    /**
+     * Register every histogram in the platform MBean server as org.zopa.loanprovider:type=QuoteMetrics,name=[name].
+     * Registering them again has no effect.
+     *
+     * @throws JMException
+     */
+    public static void registerMBeans() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (Histogram histogram : HISTOGRAMS) {
+            ObjectName name = objectName(histogram);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(histogram, name);
+            }
+        }
+    }
+
+    static ObjectName objectName(Histogram histogram) throws JMException {
+        return new ObjectName("org.zopa.loanprovider:type=QuoteMetrics,name=" + histogram.getName());
+    }
+
+    /**
+     * Print the {@link #report} periodically from a daemon thread.
+     *
+     * @param period
+     * @param unit
+     * @return the scheduler, to be shut down to stop the reports
+     */
+    public static ScheduledExecutorService startReporter(long period, TimeUnit unit) {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "quote-metrics-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(() -> Printer.printReport(report()), period, period, unit);
+        return scheduler;
+    }
+}
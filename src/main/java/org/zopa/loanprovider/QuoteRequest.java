@@ -0,0 +1,43 @@
+package org.zopa.loanprovider;
+
+import java.math.BigDecimal;
+import java.util.Objects;
+
+/**
+ * DTO for a quote requested: amount and term.
+ */
+public class QuoteRequest {
+
+    private final BigDecimal amount;
+    private final int months;
+
+    public QuoteRequest(BigDecimal amount, int months) {
+        this.amount = amount;
+        this.months = months;
+    }
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    public int getMonths() {
+        return months;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof QuoteRequest)) {
+            return false;
+        }
+        QuoteRequest other = (QuoteRequest) o;
+        return months == other.months && amount.compareTo(other.amount) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(amount.stripTrailingZeros(), months);
+    }
+}
@@ -0,0 +1,135 @@
+package org.zopa.loanprovider;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * Long-running quote server: the market is loaded once and quotes are answered over HTTP (JDK HttpServer).
+ * GET /quote?amount=[amount]&months=[months] (months is optional, 36 by default, from {@value #MIN_MONTHS} to {@value #MAX_MONTHS}).
+ * Listens on the loopback address only.
+ * Answers with the same messages as the console app. Validation errors are returned with status 400.
+ * Requests are handled on a bounded pool; when it is full the accepting thread runs the request (back-pressure).
+ */
+public class QuoteServer {
+
+    public static final String QUOTE_PATH = "/quote";
+
+    static final int MIN_MONTHS = 1;
+    static final int MAX_MONTHS = 360;
+
+    private static final int QUEUE_CAPACITY = 1024;
+
+    private final QuoteEngine engine;
+    private final HttpServer server;
+    private final ThreadPoolExecutor executor;
+
+    public QuoteServer(QuoteEngine engine, int port) throws IOException {
+        this(engine, port, Runtime.getRuntime().availableProcessors());
+    }
+
+    public QuoteServer(QuoteEngine engine, int port, int threads) throws IOException {
+        this.engine = engine;
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(QUEUE_CAPACITY), new ThreadPoolExecutor.CallerRunsPolicy());
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.server.createContext(QUOTE_PATH, this::handleQuote);
+        this.server.setExecutor(executor);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdown();
+    }
+
+    /**
+     * @return port listening (useful when started on port 0)
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public QuoteEngine getEngine() {
+        return engine;
+    }
+
+    private void handleQuote(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                respond(exchange, 405, "Only GET is supported");
+                return;
+            }
+            Map<String, String> parameters = parseQuery(exchange.getRequestURI());
+            BigDecimal amount;
+            int months;
+            try {
+                amount = new BigDecimal(parameters.getOrDefault("amount", ""));
+            } catch (NumberFormatException e) {
+                respond(exchange, 400, "Amount parameter must be a number");
+                return;
+            }
+            try {
+                months = parameters.containsKey("months") ? Integer.parseInt(parameters.get("months")) : Main.DEFAULT_MONTHS;
+            } catch (NumberFormatException e) {
+                respond(exchange, 400, "Months parameter must be a number");
+                return;
+            }
+
+            if (months < MIN_MONTHS || months > MAX_MONTHS) {
+                respond(exchange, 400, format("Months requested must be between {0} and {1}", String.valueOf(MIN_MONTHS), String.valueOf(MAX_MONTHS)));
+            } else if (Main.isValidAmount(amount) && Main.isBetweenMinMax(amount)) {
+                Optional<Loan> loan = engine.findLoanFor(amount, months);
+                respond(exchange, 200, Printer.formatResult(loan));
+            } else {
+                respond(exchange, 400, format("Amount requested must be between {0} and {1}", String.valueOf(Main.MIN_AMOUNT), String.valueOf(Main.MAX_AMOUNT))
+                        + System.lineSeparator() + "Amount requested must be for 100 increment");
+            }
+        } catch (RuntimeException e) {
+            respond(exchange, 500, String.valueOf(e.getMessage()));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String message) throws IOException {
+        byte[] body = message.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static Map<String, String> parseQuery(URI uri) {
+        Map<String, String> parameters = new HashMap<>();
+        String query = uri.getQuery();
+        if (query != null) {
+            for (String parameter : query.split("&")) {
+                int separator = parameter.indexOf('=');
+                if (separator > 0) {
+                    parameters.put(parameter.substring(0, separator), parameter.substring(separator + 1));
+                }
+            }
+        }
+        return parameters;
+    }
+}
@@ -0,0 +1,195 @@
+package org.zopa.loanprovider;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Booking mode: the amount given by each lender is subtracted from its availability.
+ * Thread-safe without locks: each lender has its own atomic counter (in pence) and
+ * the total available is reserved first with a compare-and-set, so a booking never starts without enough money
+ * and a lender is never over-allocated.
+ * Lenders are taken cheapest first, as {@link LoanProcessor} does. Available amounts must be in pence.
+ * A cursor keeps the first lender that may have money left, so bookings do not walk again the cheap lenders
+ * already drained (a release moves it back when it gives money to a lender before it).
+ */
+public class ReservationBook {
+
+    private final MarketSnapshot market;
+    private final LoanProcessor processor;
+    private final AtomicLongArray available;
+    private final AtomicLong totalAvailable;
+    private final AtomicInteger firstWithMoney = new AtomicInteger();
+    // Positions in the market of each lender (more than one when the same instance is repeated)
+    private final Map<LenderData, int[]> positions = new IdentityHashMap<>();
+
+    public ReservationBook(MarketSnapshot market, AmortizationMethod amortizationMethod) {
+        this.market = market;
+        this.processor = new LoanProcessor(market, amortizationMethod);
+        this.available = new AtomicLongArray(market.size());
+        long total = 0;
+        for (int i = 0; i < market.size(); i++) {
+            long lenderAvailable = ColumnarMarket.toAmount(market.get(i).getAvailable());
+            available.set(i, lenderAvailable);
+            total = Math.addExact(total, lenderAvailable);
+            final int position = i;
+            positions.merge(market.get(i), new int[]{i}, (first, other) -> {
+                int[] merged = Arrays.copyOf(first, first.length + 1);
+                merged[first.length] = position;
+                return merged;
+            });
+        }
+        this.totalAvailable = new AtomicLong(total);
+    }
+
+    /**
+     * Book a loan: take the amount from the cheapest lenders with money available.
+     *
+     * @param amount
+     * @param months
+     * @return the reservation, or empty when there is not enough money available
+     */
+    public Optional<Reservation> reserve(BigDecimal amount, int months) {
+        long amountRequested = ColumnarMarket.toAmount(amount);
+        if (amountRequested <= 0 || !reserveTotal(amountRequested)) {
+            return Optional.empty();
+        }
+
+        Map<Integer, Long> taken = new LinkedHashMap<>();
+        long remaining = amountRequested;
+        // The total is already reserved, so the money is there. Another pass is only needed
+        // when money released by a cancellation went to a lender already visited.
+        while (remaining > 0) {
+            for (int i = firstWithMoney.get(); i < market.size() && remaining > 0; i++) {
+                long borrowed = take(i, remaining);
+                if (borrowed > 0) {
+                    taken.merge(i, borrowed, Long::sum);
+                    remaining -= borrowed;
+                }
+                if (available.get(i) == 0) {
+                    skipDrained(i);
+                }
+            }
+        }
+
+        Map<LenderData, BigDecimal> allocations = new LinkedHashMap<>();
+        taken.forEach((index, borrowed) -> allocations.put(market.get(index), BigDecimal.valueOf(borrowed, ColumnarMarket.AMOUNT_SCALE)));
+        Loan loan = processor.calculateLoanFor(allocations, amount, months);
+        return Optional.of(new Reservation(loan, allocations, taken));
+    }
+
+    /**
+     * Cancel a reservation: the money goes back to its lenders. Releasing twice has no effect.
+     *
+     * @param reservation
+     */
+    public void release(Reservation reservation) {
+        if (reservation.released.compareAndSet(false, true)) {
+            long total = 0;
+            int first = market.size();
+            for (Map.Entry<Integer, Long> borrowed : reservation.taken.entrySet()) {
+                available.addAndGet(borrowed.getKey(), borrowed.getValue());
+                total += borrowed.getValue();
+                first = Math.min(first, borrowed.getKey());
+            }
+            // After the money, so a booking moving the cursor past these lenders either sees it or is undone here
+            firstWithMoney.accumulateAndGet(first, Math::min);
+            // Lenders first, so reserved totals are always covered by lenders
+            totalAvailable.addAndGet(total);
+        }
+    }
+
+    /**
+     * @param lenderData same instance of the market
+     * @return money left of the lender (0 when it is not in the market)
+     */
+    public BigDecimal getAvailable(LenderData lenderData) {
+        long total = 0;
+        for (int position : positions.getOrDefault(lenderData, new int[0])) {
+            total += available.get(position);
+        }
+        return BigDecimal.valueOf(total, ColumnarMarket.AMOUNT_SCALE);
+    }
+
+    /**
+     * @param index position of the lender in the market
+     * @return money left of the lender
+     */
+    public BigDecimal getAvailable(int index) {
+        return BigDecimal.valueOf(available.get(index), ColumnarMarket.AMOUNT_SCALE);
+    }
+
+    public BigDecimal getTotalAvailable() {
+        return BigDecimal.valueOf(totalAvailable.get(), ColumnarMarket.AMOUNT_SCALE);
+    }
+
+    private boolean reserveTotal(long amount) {
+        long current;
+        do {
+            current = totalAvailable.get();
+            if (current < amount) {
+                return false;
+            }
+        } while (!totalAvailable.compareAndSet(current, current - amount));
+        return true;
+    }
+
+    /**
+     * Move the cursor past a lender found without money, when the cursor is on it.
+     */
+    private void skipDrained(int index) {
+        if (firstWithMoney.compareAndSet(index, index + 1) && available.get(index) > 0) {
+            // Money released meanwhile
+            firstWithMoney.accumulateAndGet(index, Math::min);
+        }
+    }
+
+    private long take(int index, long amount) {
+        long current;
+        long borrowed;
+        do {
+            current = available.get(index);
+            if (current == 0) {
+                return 0;
+            }
+            borrowed = Math.min(current, amount);
+        } while (!available.compareAndSet(index, current, current - borrowed));
+        return borrowed;
+    }
+
+    /**
+     * Loan booked and amount given by each lender.
+     */
+    public static class Reservation {
+
+        private final Loan loan;
+        private final Map<LenderData, BigDecimal> allocations;
+        private final Map<Integer, Long> taken;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Reservation(Loan loan, Map<LenderData, BigDecimal> allocations, Map<Integer, Long> taken) {
+            this.loan = loan;
+            this.allocations = Collections.unmodifiableMap(allocations);
+            this.taken = taken;
+        }
+
+        public Loan getLoan() {
+            return loan;
+        }
+
+        /**
+         * @return amount given by each lender, cheapest first
+         */
+        public Map<LenderData, BigDecimal> getAllocations() {
+            return allocations;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package org.zopa.loanprovider;
+
+import com.google.common.math.LongMath;
+
+import java.math.BigDecimal;
+
+/**
+ * Primitive version of {@link AmortizationSchedule}: same rows, as longs in pence, read through a cursor.
+ * Only the creation allocates (the monthly payment is calculated once), moving to the next month does not.
+ *
+ * <pre>
+ * ScheduleCursor cursor = new ScheduleCursor(amortizationMethod, rate, amount, months);
+ * while (cursor.next()) {
+ *     cursor.getInterest() ...
+ * }
+ * </pre>
+ */
+public final class ScheduleCursor {
+
+    private final long unscaledMonthlyRate;
+    private final long rateUnit;
+    private final long payment;
+    private final int months;
+    private long balance;
+    private int month;
+    private long interest;
+    private long principal;
+
+    /**
+     * @throws ArithmeticException when the amount, the payment or the monthly rate do not fit in a long
+     */
+    public ScheduleCursor(AmortizationMethod amortizationMethod, BigDecimal rate, BigDecimal amount, int months) {
+        BigDecimal monthlyRate = AmortizationSchedule.monthlyRate(rate);
+        if (monthlyRate.scale() < 0) {
+            monthlyRate = monthlyRate.setScale(0);
+        }
+        this.unscaledMonthlyRate = monthlyRate.unscaledValue().longValueExact();
+        this.rateUnit = LongMath.checkedPow(10, monthlyRate.scale());
+        this.payment = toPence(AmortizationSchedule.monthlyPayment(amortizationMethod, rate, amount, months));
+        this.months = months;
+        this.balance = toPence(amount.setScale(AmortizationSchedule.SCALE, BigDecimal.ROUND_HALF_UP));
+    }
+
+    /**
+     * Move to the next month.
+     *
+     * @return false when there are no more months
+     */
+    public boolean next() {
+        if (month >= months) {
+            return false;
+        }
+        month++;
+        interest = roundHalfUp(Math.multiplyExact(balance, unscaledMonthlyRate));
+        principal = month == months ? balance : Math.min(payment - interest, balance);
+        balance -= principal;
+        return true;
+    }
+
+    public int getMonth() {
+        return month;
+    }
+
+    public long getPayment() {
+        return interest + principal;
+    }
+
+    public long getInterest() {
+        return interest;
+    }
+
+    public long getPrincipal() {
+        return principal;
+    }
+
+    public long getBalance() {
+        return balance;
+    }
+
+    // balance x rate has the rate scale plus 2: back to pence, half up (away from zero)
+    private long roundHalfUp(long value) {
+        long half = rateUnit / 2;
+        return value >= 0 ? (value + half) / rateUnit : -((-value + half) / rateUnit);
+    }
+
+    private static long toPence(BigDecimal amount) {
+        return amount.movePointRight(AmortizationSchedule.SCALE).longValueExact();
+    }
+}
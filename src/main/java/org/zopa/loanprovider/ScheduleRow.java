@@ -0,0 +1,49 @@
+package org.zopa.loanprovider;
+
+import java.math.BigDecimal;
+
+/**
+ * DTO for one month of an amortization schedule. Money values in pence (scale 2).
+ */
+public class ScheduleRow {
+
+    private final int month;
+    private final BigDecimal payment;
+    private final BigDecimal interest;
+    private final BigDecimal principal;
+    private final BigDecimal balance;
+
+    public ScheduleRow(int month, BigDecimal payment, BigDecimal interest, BigDecimal principal, BigDecimal balance) {
+        this.month = month;
+        this.payment = payment;
+        this.interest = interest;
+        this.principal = principal;
+        this.balance = balance;
+    }
+
+    /**
+     * @return month number, from 1
+     */
+    public int getMonth() {
+        return month;
+    }
+
+    public BigDecimal getPayment() {
+        return payment;
+    }
+
+    public BigDecimal getInterest() {
+        return interest;
+    }
+
+    public BigDecimal getPrincipal() {
+        return principal;
+    }
+
+    /**
+     * @return balance left after the payment
+     */
+    public BigDecimal getBalance() {
+        return balance;
+    }
+}
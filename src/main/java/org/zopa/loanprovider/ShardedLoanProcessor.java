@@ -0,0 +1,27 @@
+package org.zopa.loanprovider;
+
+import java.math.BigDecimal;
+import java.util.Optional;
+
+/**
+ * Quotes over a {@link ShardedMarket}. Same rates as {@link BatchQuoter} over the whole market.
+ * Safe to use from any number of threads while the market is updated.
+ */
+public class ShardedLoanProcessor {
+
+    private final ShardedMarket market;
+    private final AmortizationMethod amortizationMethod;
+
+    public ShardedLoanProcessor(ShardedMarket market, AmortizationMethod amortizationMethod) {
+        this.market = market;
+        this.amortizationMethod = amortizationMethod;
+    }
+
+    public Optional<Loan> findLoanFor(BigDecimal amount, int months) {
+        return market.calculateShareRate(amount).map(loanRate -> {
+            BigDecimal monthtlyPayment = amortizationMethod.calculateMonthlyPayment(loanRate, amount, months);
+            BigDecimal totalRepayment = monthtlyPayment.multiply(BigDecimal.valueOf(months));
+            return new Loan(amount, loanRate, monthtlyPayment, totalRepayment);
+        });
+    }
+}
@@ -0,0 +1,293 @@
+package org.zopa.loanprovider;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.IntStream;
+
+/**
+ * Market split in rate bands (shards), cheapest band first. All the lenders with the same rate are in the same band.
+ * Each shard keeps its own {@link PrefixSumIndex}, so a quote takes the bands fully covered with their totals
+ * (O(1) per band) and only searches the band where the amount ends (O(log n) in that band).
+ * Shards are built in parallel (one task per shard) and updated independently: an update locks and rebuilds
+ * only its shard (copy on write, O(shard size)), quotes never lock. A quote reads each shard once,
+ * so it sees every shard consistent but not necessarily all of them at the same time.
+ * The rate is the exact money-weighted rate, the same {@link PrefixSumIndex} gives for the whole market.
+ * Bands are recomputed from all the lenders (rebalanced) when an update leaves a shard of more than
+ * {@value #REBALANCE_MIN_SIZE} lenders with over 1.5 times its share of the market, so a market built empty
+ * (one shard) and loaded with {@link #add} ends up split too. Rebalancing blocks the updates (not the quotes)
+ * and only happens again once the market has grown by a share since the last one, so rates repeated too much
+ * to split do not rebalance on every update.
+ */
+public class ShardedMarket {
+
+    static final int REBALANCE_MIN_SIZE = 1024;
+
+    private final int shardsRequested;
+    // Updates hold the read lock (each one also locks its shard), rebalancing the write lock
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile Bands bands;
+    private volatile int rebalanceSize;
+
+    public ShardedMarket(List<LenderData> marketData) {
+        this(marketData, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Bands are chosen with the same number of lenders each, as far as the rates allow
+     * (there may be fewer shards than requested, see {@link #getShardsCount()}).
+     *
+     * @param marketData
+     * @param shardsCount
+     */
+    public ShardedMarket(List<LenderData> marketData, int shardsCount) {
+        if (shardsCount <= 0) {
+            throw new IllegalArgumentException("Shards count must be positive");
+        }
+        this.shardsRequested = shardsCount;
+        this.bands = new Bands(marketData, shardsCount);
+        this.rebalanceSize = nextRebalanceSize(marketData.size());
+    }
+
+    public int getShardsCount() {
+        return bands.shards.length;
+    }
+
+    /**
+     * @param shard
+     * @return lenders of the shard at this point
+     */
+    public MarketSnapshot getShard(int shard) {
+        return bands.shards[shard].index.getMarket();
+    }
+
+    public BigDecimal getTotalAvailable() {
+        BigDecimal total = BigDecimal.ZERO;
+        for (Shard shard : bands.shards) {
+            total = total.add(shard.index.getTotalAvailable());
+        }
+        return total;
+    }
+
+    public void add(LenderData lenderData) {
+        boolean unbalanced;
+        lock.readLock().lock();
+        try {
+            Bands current = bands;
+            Shard shard = current.shards[current.shardOf(lenderData.getRate())];
+            shard.add(lenderData);
+            unbalanced = isUnbalanced(current, shard);
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (unbalanced) {
+            rebalance();
+        }
+    }
+
+    /**
+     * Remove the lender (same instance previously added).
+     *
+     * @param lenderData
+     * @return true if the lender was in the market
+     */
+    public boolean remove(LenderData lenderData) {
+        lock.readLock().lock();
+        try {
+            Bands current = bands;
+            return current.shards[current.shardOf(lenderData.getRate())].remove(lenderData);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Money-Weighted Rate for the amount.
+     *
+     * @param amountRequested
+     * @return the rate, or empty when there are not sufficient offers
+     */
+    public Optional<BigDecimal> calculateShareRate(BigDecimal amountRequested) {
+        Shard[] shards = bands.shards;
+        PrefixSumIndex[] indexes = new PrefixSumIndex[shards.length];
+        BigDecimal total = BigDecimal.ZERO;
+        for (int i = 0; i < shards.length; i++) {
+            indexes[i] = shards[i].index;
+            total = total.add(indexes[i].getTotalAvailable());
+        }
+        if (total.compareTo(amountRequested) < 0) {
+            return Optional.empty();
+        }
+
+        BigDecimal collected = BigDecimal.ZERO;
+        BigDecimal weightedRate = BigDecimal.ZERO;
+        for (PrefixSumIndex index : indexes) {
+            int size = index.getMarket().size();
+            if (collected.add(index.getTotalAvailable()).compareTo(amountRequested) < 0) {
+                // Band fully taken
+                collected = collected.add(index.getTotalAvailable());
+                weightedRate = weightedRate.add(index.getWeightedRate(size));
+            } else {
+                BigDecimal rest = amountRequested.subtract(collected);
+                int taken = index.lendersBelow(rest);
+                weightedRate = weightedRate.add(index.getWeightedRate(taken));
+                if (taken < size) {
+                    BigDecimal borrowed = rest.subtract(index.getCumulativeAvailable(taken));
+                    weightedRate = weightedRate.add(borrowed.multiply(index.getMarket().get(taken).getRate()));
+                }
+                break;
+            }
+        }
+        try {
+            return Optional.of(weightedRate.divide(amountRequested, PrefixSumIndex.RATE_SCALE, BigDecimal.ROUND_CEILING));
+        } catch (ArithmeticException e) {
+            throw new ArithmeticException("Error calculating money-weighted rate");
+        }
+    }
+
+    /**
+     * Upper rates (excluded) of the bands splitting the rates given in bands with about the same number of lenders.
+     * A band ends after its share of lenders and the ones with the same rate, so fewer bands are left when rates repeat.
+     *
+     * @param sortedRates rates of all the lenders, sorted
+     * @param bands       bands requested
+     * @return upper rate of each band but the last one (unbounded)
+     */
+    static BigDecimal[] rateBands(BigDecimal[] sortedRates, int bands) {
+        List<BigDecimal> bounds = new ArrayList<>();
+        int end = 0;
+        for (int i = 1; i < bands; i++) {
+            end = Math.max(end, (int) ((long) i * sortedRates.length / bands));
+            while (end > 0 && end < sortedRates.length && sortedRates[end].compareTo(sortedRates[end - 1]) == 0) {
+                end++;
+            }
+            if (end > 0 && end < sortedRates.length
+                    && (bounds.isEmpty() || sortedRates[end].compareTo(bounds.get(bounds.size() - 1)) > 0)) {
+                bounds.add(sortedRates[end]);
+            }
+        }
+        return bounds.toArray(new BigDecimal[0]);
+    }
+
+    private boolean isUnbalanced(Bands current, Shard shard) {
+        int size = shard.size();
+        if (size <= REBALANCE_MIN_SIZE) {
+            return false;
+        }
+        int total = current.size();
+        return total >= rebalanceSize && 2L * size * shardsRequested > 3L * total;
+    }
+
+    private void rebalance() {
+        lock.writeLock().lock();
+        try {
+            Bands current = bands;
+            boolean unbalanced = false;
+            for (Shard shard : current.shards) {
+                // Checked again: another update may have rebalanced already
+                unbalanced |= isUnbalanced(current, shard);
+            }
+            if (unbalanced) {
+                List<LenderData> marketData = new ArrayList<>(current.size());
+                for (Shard shard : current.shards) {
+                    shard.index.getMarket().forEach(marketData::add);
+                }
+                bands = new Bands(marketData, shardsRequested);
+                rebalanceSize = nextRebalanceSize(marketData.size());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private int nextRebalanceSize(int size) {
+        return size + size / shardsRequested;
+    }
+
+    /**
+     * Upper rates of the bands and their shards, replaced together when rebalancing.
+     */
+    private static final class Bands {
+
+        private final BigDecimal[] upperRates;
+        private final Shard[] shards;
+
+        Bands(List<LenderData> marketData, int shardsCount) {
+            BigDecimal[] rates = marketData.stream().map(LenderData::getRate).sorted().toArray(BigDecimal[]::new);
+            // Shard i holds the rates below upperRates[i] (and not below the previous one), the last one the rest
+            this.upperRates = rateBands(rates, shardsCount);
+            int count = upperRates.length + 1;
+
+            List<List<LenderData>> shardsData = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                shardsData.add(new ArrayList<>());
+            }
+            marketData.forEach(lenderData -> shardsData.get(shardOf(lenderData.getRate())).add(lenderData));
+            this.shards = new Shard[count];
+            IntStream.range(0, count).parallel().forEach(i -> shards[i] = new Shard(shardsData.get(i)));
+        }
+
+        int size() {
+            int size = 0;
+            for (Shard shard : shards) {
+                size += shard.size();
+            }
+            return size;
+        }
+
+        int shardOf(BigDecimal rate) {
+            int low = 0;
+            int high = upperRates.length;
+            // First band whose upper rate is above the rate
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (rate.compareTo(upperRates[middle]) < 0) {
+                    high = middle;
+                } else {
+                    low = middle + 1;
+                }
+            }
+            return low;
+        }
+    }
+
+    private static final class Shard {
+
+        private volatile PrefixSumIndex index;
+
+        Shard(List<LenderData> marketData) {
+            this.index = new PrefixSumIndex(MarketSnapshot.of(marketData));
+        }
+
+        int size() {
+            return index.getMarket().size();
+        }
+
+        synchronized void add(LenderData lenderData) {
+            List<LenderData> marketData = new ArrayList<>(index.getMarket().size() + 1);
+            index.getMarket().forEach(marketData::add);
+            marketData.add(lenderData);
+            index = new PrefixSumIndex(MarketSnapshot.of(marketData));
+        }
+
+        synchronized boolean remove(LenderData lenderData) {
+            MarketSnapshot market = index.getMarket();
+            List<LenderData> marketData = new ArrayList<>(market.size());
+            boolean removed = false;
+            for (LenderData current : market) {
+                if (!removed && current == lenderData) {
+                    removed = true;
+                } else {
+                    marketData.add(current);
+                }
+            }
+            if (removed) {
+                index = new PrefixSumIndex(MarketSnapshot.of(marketData));
+            }
+            return removed;
+        }
+    }
+}
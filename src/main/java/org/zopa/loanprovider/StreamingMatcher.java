@@ -0,0 +1,75 @@
+package org.zopa.loanprovider;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.stream.Stream;
+
+/**
+ * Quotes over lenders read one by one (in any order), without keeping or sorting the whole market.
+ * Only the cheapest lenders covering the amount requested are kept, in a heap with the most expensive one on top:
+ * when the rest of the heap already covers the amount, the top lender is dropped.
+ * So a quote is O(n log k) time and O(k) memory, k being the number of lenders needed for the amount.
+ * The loan is the same {@link LoanProcessor} calculates over the whole market.
+ */
+public class StreamingMatcher {
+
+    private final AmortizationMethod amortizationMethod;
+
+    public StreamingMatcher(AmortizationMethod amortizationMethod) {
+        this.amortizationMethod = amortizationMethod;
+    }
+
+    public Optional<Loan> findLoanFor(Iterator<LenderData> lenders, BigDecimal amount, int months) {
+        List<LenderData> cheapestLenders = cheapestLendersFor(lenders, amount);
+        return new LoanProcessor(cheapestLenders, amortizationMethod).findLoanFor(amount, months);
+    }
+
+    public Optional<Loan> findLoanFor(Stream<LenderData> lenders, BigDecimal amount, int months) {
+        return findLoanFor(lenders.iterator(), amount, months);
+    }
+
+    /**
+     * Stream the market data file (see {@link FileReader#streamMarketData}).
+     *
+     * @param filePath
+     * @param amount
+     * @param months
+     * @return
+     * @throws IOException
+     */
+    public Optional<Loan> findLoanFor(String filePath, BigDecimal amount, int months) throws IOException {
+        try (Stream<LenderData> lenders = FileReader.streamMarketData(filePath)) {
+            return findLoanFor(lenders, amount, months);
+        }
+    }
+
+    /**
+     * Cheapest lenders covering the amount, sorted by {@link LoanComparator#byRate}.
+     * When the lenders given do not cover the amount, all of them.
+     *
+     * @param lenders
+     * @param amount
+     * @return
+     */
+    public static List<LenderData> cheapestLendersFor(Iterator<LenderData> lenders, BigDecimal amount) {
+        PriorityQueue<LenderData> cheapest = new PriorityQueue<>(LoanComparator.byRate.reversed());
+        BigDecimal collected = BigDecimal.ZERO;
+        while (lenders.hasNext()) {
+            LenderData lenderData = lenders.next();
+            cheapest.add(lenderData);
+            collected = collected.add(lenderData.getAvailable());
+            // Drop the most expensive lenders not needed to cover the amount
+            while (!cheapest.isEmpty() && collected.subtract(cheapest.peek().getAvailable()).compareTo(amount) >= 0) {
+                collected = collected.subtract(cheapest.poll().getAvailable());
+            }
+        }
+        List<LenderData> sorted = new ArrayList<>(cheapest);
+        sorted.sort(LoanComparator.byRate);
+        return sorted;
+    }
+}
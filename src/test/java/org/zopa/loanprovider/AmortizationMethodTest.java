@@ -0,0 +1,104 @@
+package org.zopa.loanprovider;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.math.BigDecimal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.zopa.loanprovider.HelpersTest.roundPayment;
+
+/**
+ * Test amortization methods against the French method (reference).
+ */
+public class AmortizationMethodTest {
+
+    private static final int[] TERMS = {1, 12, 36, 60, 120};
+
+    @Rule
+    public final ExpectedException exception = ExpectedException.none();
+
+    @Test
+    public void testFastFrenchSameAsFrenchOnCorpus() {
+        AmortizationMethod expectedMethod = new FrenchAmortizationMethod();
+        AmortizationMethod fastMethod = new FastFrenchAmortizationMethod();
+
+        for (int rate = 1; rate <= 300; rate += 13) {
+            for (int scale = 3; scale <= 8; scale++) {
+                BigDecimal loanRate = BigDecimal.valueOf(rate * 1237L, scale + 2).stripTrailingZeros();
+                for (int amount = 1000; amount <= 15000; amount += 700) {
+                    for (int months : TERMS) {
+                        assertSamePayment(expectedMethod, fastMethod, loanRate, BigDecimal.valueOf(amount), months);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testFastFrenchSameAsFrenchForMarketRates() {
+        AmortizationMethod expectedMethod = new FrenchAmortizationMethod();
+        AmortizationMethod fastMethod = new FastFrenchAmortizationMethod();
+        BigDecimal[] rates = {new BigDecimal("0.07"), new BigDecimal("0.0700000"), new BigDecimal("0.0704"),
+                new BigDecimal("0.0697312"), new BigDecimal("0.5"), new BigDecimal("0.104")};
+
+        for (BigDecimal rate : rates) {
+            for (int amount = 1000; amount <= 15000; amount += 100) {
+                assertSamePayment(expectedMethod, fastMethod, rate, BigDecimal.valueOf(amount), 36);
+            }
+        }
+    }
+
+    @Test
+    public void testFastFrenchUsesExactMethodForZeroRate() {
+        AmortizationMethod fastMethod = new FastFrenchAmortizationMethod();
+        exception.expect(ArithmeticException.class);
+        exception.expectMessage("Error calculating loan amortization for rate 0");
+        fastMethod.calculateMonthlyPayment(BigDecimal.ZERO, BigDecimal.valueOf(1000), 36);
+    }
+
+    @Test
+    public void testCachedFactorSameAsFrench() {
+        AmortizationMethod expectedMethod = new FrenchAmortizationMethod();
+        CachedAmortizationMethod cachedMethod = new CachedAmortizationMethod(new FrenchAmortizationMethod());
+        BigDecimal rate = new BigDecimal("0.0697312");
+
+        for (int amount = 1000; amount <= 15000; amount += 100) {
+            assertThat(cachedMethod.calculateMonthlyPayment(rate, BigDecimal.valueOf(amount), 36))
+                    .isEqualTo(expectedMethod.calculateMonthlyPayment(rate, BigDecimal.valueOf(amount), 36));
+        }
+
+        assertThat(cachedMethod.size()).isEqualTo(1);
+        assertThat(cachedMethod.getStats().missCount()).isEqualTo(1);
+        assertThat(cachedMethod.getStats().hitCount()).isEqualTo(140);
+    }
+
+    @Test
+    public void testCachedFactorBounded() {
+        CachedAmortizationMethod cachedMethod = new CachedAmortizationMethod(new FrenchAmortizationMethod(), 2);
+        cachedMethod.calculateMonthlyPayment(new BigDecimal("0.07"), BigDecimal.valueOf(1000), 36);
+        cachedMethod.calculateMonthlyPayment(new BigDecimal("0.07"), BigDecimal.valueOf(1000), 12);
+        cachedMethod.calculateMonthlyPayment(new BigDecimal("0.08"), BigDecimal.valueOf(1000), 36);
+
+        assertThat(cachedMethod.size()).isEqualTo(2);
+        assertThat(cachedMethod.getStats().evictionCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testCachedFactorErrorMessage() {
+        AmortizationMethod cachedMethod = new CachedAmortizationMethod(new FrenchAmortizationMethod());
+        exception.expect(ArithmeticException.class);
+        exception.expectMessage("Error calculating loan amortization for rate 0 amount 1000");
+        cachedMethod.calculateMonthlyPayment(BigDecimal.ZERO, BigDecimal.valueOf(1000), 36);
+    }
+
+    private static void assertSamePayment(AmortizationMethod expectedMethod, AmortizationMethod method, BigDecimal rate, BigDecimal amount, int months) {
+        BigDecimal expected = expectedMethod.calculateMonthlyPayment(rate, amount, months);
+        BigDecimal payment = method.calculateMonthlyPayment(rate, amount, months);
+        BigDecimal total = BigDecimal.valueOf(months);
+        assertThat(roundPayment(payment)).as("%s %s %s", rate, amount, months).isEqualTo(roundPayment(expected));
+        assertThat(roundPayment(payment.multiply(total))).as("%s %s %s", rate, amount, months).isEqualTo(roundPayment(expected.multiply(total)));
+    }
+
+}
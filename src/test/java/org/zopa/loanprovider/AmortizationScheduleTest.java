@@ -0,0 +1,95 @@
+package org.zopa.loanprovider;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test month by month amortization schedules.
+ */
+public class AmortizationScheduleTest {
+
+    private final AmortizationMethod amortizationMethod = new FrenchAmortizationMethod();
+
+    @Test
+    public void testSchedule() {
+        BigDecimal rate = new BigDecimal("0.0700");
+        BigDecimal amount = BigDecimal.valueOf(1000);
+        List<ScheduleRow> rows = amortizationMethod.schedule(rate, amount, 36).collect(Collectors.toList());
+
+        assertThat(rows).hasSize(36);
+        ScheduleRow first = rows.get(0);
+        assertThat(first.getMonth()).isEqualTo(1);
+        assertThat(first.getPayment()).isEqualTo(new BigDecimal("30.92"));
+        // 1000 x 0.0059 (0.07 / 12 rounded up at the rate scale)
+        assertThat(first.getInterest()).isEqualTo(new BigDecimal("5.90"));
+        assertThat(first.getPrincipal()).isEqualTo(new BigDecimal("25.02"));
+        assertThat(first.getBalance()).isEqualTo(new BigDecimal("974.98"));
+
+        ScheduleRow last = rows.get(35);
+        assertThat(last.getBalance()).isEqualTo(new BigDecimal("0.00"));
+        assertThat(rows.stream().map(ScheduleRow::getPrincipal).reduce(BigDecimal.ZERO, BigDecimal::add))
+                .isEqualTo(new BigDecimal("1000.00"));
+        for (ScheduleRow row : rows.subList(0, 35)) {
+            assertThat(row.getPayment()).isEqualTo(new BigDecimal("30.92"));
+        }
+        // Last payment only adjusts the rounding of the previous months
+        assertThat(last.getPayment().subtract(new BigDecimal("30.92")).abs()).isLessThan(BigDecimal.ONE);
+    }
+
+    @Test
+    public void testCursorSameAsSchedule() {
+        for (String rate : new String[]{"0.07", "0.069", "0.0704523", "0.15"}) {
+            for (int months : new int[]{1, 12, 36, 360}) {
+                BigDecimal amount = new BigDecimal("12345.67");
+                Iterator<ScheduleRow> rows = amortizationMethod.schedule(new BigDecimal(rate), amount, months).iterator();
+                ScheduleCursor cursor = amortizationMethod.scheduleCursor(new BigDecimal(rate), amount, months);
+
+                while (cursor.next()) {
+                    ScheduleRow row = rows.next();
+                    assertThat(cursor.getMonth()).isEqualTo(row.getMonth());
+                    assertThat(cursor.getPayment()).isEqualTo(pence(row.getPayment()));
+                    assertThat(cursor.getInterest()).isEqualTo(pence(row.getInterest()));
+                    assertThat(cursor.getPrincipal()).isEqualTo(pence(row.getPrincipal()));
+                    assertThat(cursor.getBalance()).isEqualTo(pence(row.getBalance()));
+                }
+                assertThat(rows.hasNext()).isFalse();
+                assertThat(cursor.getBalance()).isEqualTo(0);
+            }
+        }
+    }
+
+    @Test
+    public void testScheduleIsLazy() {
+        // Only the rows consumed are calculated: the schedule goes on from the fourth month
+        AmortizationSchedule schedule = new AmortizationSchedule(amortizationMethod, new BigDecimal("0.0700"), BigDecimal.valueOf(1000), 36);
+        List<ScheduleRow> rows = AmortizationSchedule.stream(schedule).limit(3).collect(Collectors.toList());
+
+        assertThat(rows).extracting(ScheduleRow::getMonth).containsExactly(1, 2, 3);
+        assertThat(schedule.next().getMonth()).isEqualTo(4);
+        assertThat(AmortizationSchedule.stream(schedule).count()).isEqualTo(32);
+    }
+
+    @Test
+    public void testWriteCsv() throws IOException {
+        StringWriter writer = new StringWriter();
+        AmortizationSchedule.writeCsv(amortizationMethod.schedule(new BigDecimal("0.0700"), BigDecimal.valueOf(1000), 36), writer);
+
+        String[] lines = writer.toString().split(System.lineSeparator());
+        assertThat(lines).hasSize(37);
+        assertThat(lines[0]).isEqualTo("Month,Payment,Interest,Principal,Balance");
+        assertThat(lines[1]).isEqualTo("1,30.92,5.90,25.02,974.98");
+        assertThat(lines[36]).endsWith(",0.00");
+    }
+
+    private static long pence(BigDecimal value) {
+        return value.movePointRight(2).longValueExact();
+    }
+}
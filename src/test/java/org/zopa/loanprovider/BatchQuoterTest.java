@@ -0,0 +1,108 @@
+package org.zopa.loanprovider;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.zopa.loanprovider.HelpersTest.roundRate;
+
+/**
+ * Test batch quoting and processor with cumulative sums index.
+ */
+public class BatchQuoterTest {
+
+    @Test
+    public void testBatchSameAsLoanProcessorForExactShares() {
+        List<LenderData> marketData = new ArrayList<LenderData>() {{
+            add(new LenderData("Martin", BigDecimal.valueOf(0.03), BigDecimal.valueOf(400)));
+            add(new LenderData("Peter", BigDecimal.valueOf(0.06), BigDecimal.valueOf(60)));
+            add(new LenderData("John", BigDecimal.valueOf(0.02), BigDecimal.valueOf(1200)));
+        }};
+        List<QuoteRequest> requests = new ArrayList<>();
+        for (int months : new int[]{12, 36, 60}) {
+            requests.add(new QuoteRequest(BigDecimal.valueOf(1000), months));
+            requests.add(new QuoteRequest(BigDecimal.valueOf(1500), months));
+            requests.add(new QuoteRequest(BigDecimal.valueOf(2000), months));
+        }
+
+        Map<QuoteRequest, Optional<Loan>> loans = new BatchQuoter(MarketSnapshot.of(marketData), new FrenchAmortizationMethod()).findLoansFor(requests);
+
+        assertThat(loans.keySet()).containsExactlyElementsOf(requests);
+        LoanProcessor processor = new LoanProcessor(marketData, new FrenchAmortizationMethod());
+        for (QuoteRequest request : requests) {
+            Optional<Loan> expected = processor.findLoanFor(request.getAmount(), request.getMonths());
+            assertThat(loans.get(request).isPresent()).isEqualTo(expected.isPresent());
+            if (expected.isPresent()) {
+                assertThat(loans.get(request).get().getRate()).isEqualByComparingTo(expected.get().getRate());
+            }
+        }
+    }
+
+    @Test
+    public void testBatchCloseToLoanProcessor() {
+        List<LenderData> marketData = QuoteEngineTest.randomMarket(new Random(11), 3000);
+        MarketSnapshot market = MarketSnapshot.of(marketData);
+        List<QuoteRequest> requests = new ArrayList<>();
+        for (int amount = 1000; amount <= 15000; amount += 100) {
+            requests.add(new QuoteRequest(BigDecimal.valueOf(amount), 36));
+        }
+
+        Map<QuoteRequest, Optional<Loan>> loans = new BatchQuoter(market, new FrenchAmortizationMethod()).findLoansFor(requests);
+
+        LoanProcessor processor = new LoanProcessor(market, new FrenchAmortizationMethod());
+        for (QuoteRequest request : requests) {
+            BigDecimal expected = processor.findLoanFor(request.getAmount(), 36).get().getRate();
+            BigDecimal rate = loans.get(request).get().getRate();
+            // Shares rounded up by the processor: never below the exact rate, at most 0.0001 x rate for each lender
+            assertThat(rate).isLessThanOrEqualTo(expected);
+            assertThat(expected.subtract(rate)).isLessThan(new BigDecimal("0.0002"));
+            assertThat(roundRate(rate)).isBetween(roundRate(expected).subtract(new BigDecimal("0.1")), roundRate(expected));
+        }
+    }
+
+    @Test
+    public void testIndexedProcessorSameAsBatch() {
+        MarketSnapshot market = MarketSnapshot.of(QuoteEngineTest.randomMarket(new Random(5), 1000));
+        PrefixSumIndex index = new PrefixSumIndex(market);
+        LoanProcessor processor = new LoanProcessor(index, new FrenchAmortizationMethod());
+        BatchQuoter batchQuoter = new BatchQuoter(index, new FrenchAmortizationMethod());
+
+        for (int amount = 1000; amount <= 15000; amount += 100) {
+            QuoteRequest request = new QuoteRequest(BigDecimal.valueOf(amount), 36);
+            Loan expected = batchQuoter.findLoansFor(new ArrayList<QuoteRequest>() {{
+                add(request);
+            }}).get(request).get();
+            Loan loan = processor.findLoanFor(BigDecimal.valueOf(amount), 36).get();
+            assertThat(loan.getRate()).isEqualTo(expected.getRate());
+            assertThat(loan.getMonthlyRepayment()).isEqualTo(expected.getMonthlyRepayment());
+        }
+        assertThat(processor.findLoanFor(index.getTotalAvailable().add(BigDecimal.ONE), 36)).isEmpty();
+        assertThat(index.lendersBelow(market.get(0).getAvailable())).isEqualTo(0);
+        assertThat(index.lendersBelow(market.get(0).getAvailable().add(BigDecimal.ONE))).isEqualTo(1);
+    }
+
+    @Test
+    public void testBatchNotEnoughOffer() {
+        List<LenderData> marketData = new ArrayList<LenderData>() {{
+            add(new LenderData("Martin", BigDecimal.valueOf(0.05), BigDecimal.valueOf(3000)));
+        }};
+        QuoteRequest request = new QuoteRequest(BigDecimal.valueOf(8000), 36);
+        QuoteRequest exact = new QuoteRequest(BigDecimal.valueOf(3000), 36);
+
+        Map<QuoteRequest, Optional<Loan>> loans = new BatchQuoter(MarketSnapshot.of(marketData), new FrenchAmortizationMethod())
+                .findLoansFor(new ArrayList<QuoteRequest>() {{
+                    add(request);
+                    add(exact);
+                }});
+
+        assertThat(loans.get(request)).isEmpty();
+        assertThat(loans.get(exact).get().getRate()).isEqualByComparingTo(BigDecimal.valueOf(0.05));
+    }
+
+}
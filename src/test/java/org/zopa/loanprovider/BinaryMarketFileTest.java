@@ -0,0 +1,180 @@
+package org.zopa.loanprovider;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test binary market data snapshots.
+ */
+public class BinaryMarketFileTest {
+
+    private static final String MARKET_FILE = "market.csv";
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void testConvertAndLoad() throws IOException {
+        String binaryFile = HelpersTest.createTemporalFile();
+        BinaryMarketFile.convert(MARKET_FILE, binaryFile);
+
+        assertThat(BinaryMarketFile.isBinary(binaryFile)).isTrue();
+        assertThat(BinaryMarketFile.isBinary(MARKET_FILE)).isFalse();
+
+        List<LenderData> marketData = FileReader.getMarketData(MARKET_FILE);
+        ColumnarMarket market = BinaryMarketFile.load(binaryFile);
+        assertThat(market.size()).isEqualTo(marketData.size());
+
+        // Same lenders (amounts in the file are written without trailing zeros)
+        LoanProcessor expected = new LoanProcessor(marketData, new FrenchAmortizationMethod());
+        assertThat(MarketSnapshot.of(market.asList()))
+                .usingElementComparatorOnFields("name", "rate", "available")
+                .containsExactlyElementsOf(expected.getMarket());
+
+        for (int amount = 1000; amount <= 2300; amount += 100) {
+            BigDecimal requested = BigDecimal.valueOf(amount);
+            assertThat(new LoanProcessor(market.asList(), new FrenchAmortizationMethod()).findLoanFor(requested, 36).get())
+                    .isEqualToIgnoringGivenFields(expected.findLoanFor(requested, 36).get(), "allocation");
+        }
+    }
+
+    @Test
+    public void testLargeMarketRoundTrip() throws IOException {
+        List<LenderData> marketData = QuoteEngineTest.randomMarket(new Random(15), 50_000);
+        ColumnarMarket market = ColumnarMarket.of(marketData);
+        String binaryFile = HelpersTest.createTemporalFile();
+        BinaryMarketFile.write(market, binaryFile);
+
+        ColumnarMarket loaded = BinaryMarketFile.load(binaryFile);
+        assertThat(loaded.size()).isEqualTo(market.size());
+        assertThat(loaded.getNamesCount()).isEqualTo(market.getNamesCount());
+        assertThat(loaded.getTotalAvailable()).isEqualTo(market.getTotalAvailable());
+        for (int i = 0; i < market.size(); i++) {
+            assertThat(loaded.getName(i)).isEqualTo(market.getName(i));
+            assertThat(loaded.getRate(i)).isEqualTo(market.getRate(i));
+            assertThat(loaded.getAvailable(i)).isEqualTo(market.getAvailable(i));
+        }
+    }
+
+    @Test
+    public void testCorruptedFile() throws IOException {
+        String binaryFile = HelpersTest.createTemporalFile();
+        BinaryMarketFile.convert(MARKET_FILE, binaryFile);
+        try (RandomAccessFile file = new RandomAccessFile(binaryFile, "rw")) {
+            file.seek(20);
+            file.write(file.read() ^ 1);
+        }
+
+        thrown.expect(RuntimeException.class);
+        thrown.expectMessage("Error reading binary market data file. Invalid checksum");
+        BinaryMarketFile.load(binaryFile);
+    }
+
+    @Test
+    public void testStreamSameAsLoad() throws IOException {
+        ColumnarMarket market = ColumnarMarket.of(QuoteEngineTest.randomMarket(new Random(16), 5_000));
+        String binaryFile = HelpersTest.createTemporalFile();
+        BinaryMarketFile.write(market, binaryFile);
+
+        try (Stream<LenderData> lenders = BinaryMarketFile.stream(binaryFile)) {
+            assertThat(lenders.collect(Collectors.toList()))
+                    .usingElementComparatorOnFields("name", "rate", "available")
+                    .containsExactlyElementsOf(market.asList());
+        }
+    }
+
+    @Test
+    public void testStreamChecksChecksumAfterLastLender() throws IOException {
+        String binaryFile = HelpersTest.createTemporalFile();
+        BinaryMarketFile.convert(MARKET_FILE, binaryFile);
+        try (RandomAccessFile file = new RandomAccessFile(binaryFile, "rw")) {
+            file.seek(file.length() - 1);
+            int last = file.read();
+            file.seek(file.length() - 1);
+            file.write(last ^ 1);
+        }
+
+        Iterator<LenderData> lenders = BinaryMarketFile.stream(binaryFile).iterator();
+        assertThat(lenders.next().getName()).isNotEmpty();
+        thrown.expect(RuntimeException.class);
+        thrown.expectMessage("Error reading binary market data file. Invalid checksum");
+        while (lenders.hasNext()) {
+            lenders.next();
+        }
+    }
+
+    @Test
+    public void testSameQuotesAsCsvForRatesWithTrailingZeros() throws IOException {
+        String csvFile = HelpersTest.createTemporalFile("Lender,Rate,Available\nA,0.0700,1000\nB,0.0800,1000\n");
+        String binaryFile = HelpersTest.createTemporalFile();
+        BinaryMarketFile.convert(csvFile, binaryFile);
+
+        assertThat(BinaryMarketFile.load(binaryFile).asList()).extracting(LenderData::getRate)
+                .containsExactly(new BigDecimal("0.0700"), new BigDecimal("0.0800"));
+        for (int amount = 1000; amount <= 2000; amount += 100) {
+            assertThat(runMain(binaryFile, String.valueOf(amount))).isEqualTo(runMain(csvFile, String.valueOf(amount)));
+        }
+        assertThat(runMain(binaryFile, "1700")).contains("1901.25");
+    }
+
+    @Test
+    public void testReadsVersionWithoutRateScales() throws IOException {
+        String binaryFile = HelpersTest.createTemporalFile();
+        BinaryMarketFile.convert(HelpersTest.createTemporalFile("Lender,Rate,Available\nA,0.0700,1000\nB,0.075,640\n"), binaryFile);
+        // Version 1: same file without the rate scale column
+        byte[] file = Files.readAllBytes(Paths.get(binaryFile));
+        ByteBuffer version1 = ByteBuffer.allocate(file.length - 2);
+        version1.put(file, 0, file.length - 2 - 4).putInt(0);
+        version1.putShort(4, (short) 1);
+        CRC32 checksum = new CRC32();
+        checksum.update(version1.array(), 0, version1.capacity() - 4);
+        version1.putInt(version1.capacity() - 4, (int) checksum.getValue());
+        Files.write(Paths.get(binaryFile), version1.array());
+
+        assertThat(BinaryMarketFile.load(binaryFile).asList()).extracting(LenderData::getRate)
+                .containsExactly(new BigDecimal("0.07"), new BigDecimal("0.075"));
+        try (Stream<LenderData> lenders = BinaryMarketFile.stream(binaryFile)) {
+            assertThat(lenders.map(LenderData::getRate).collect(Collectors.toList()))
+                    .containsExactly(new BigDecimal("0.07"), new BigDecimal("0.075"));
+        }
+    }
+
+    @Test
+    public void testMainAcceptsBothFormats() throws IOException {
+        String binaryFile = HelpersTest.createTemporalFile();
+        Main.main(new String[]{"--convert", MARKET_FILE, binaryFile});
+
+        assertThat(runMain(binaryFile, "1700")).isEqualTo(runMain(MARKET_FILE, "1700"));
+        assertThat(runMain(binaryFile, "1700")).contains("Rate: 7.1%");
+    }
+
+    private static String runMain(String marketFile, String amount) {
+        PrintStream out = System.out;
+        ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(outContent));
+        try {
+            Main.main(new String[]{marketFile, amount});
+        } finally {
+            System.setOut(out);
+        }
+        return outContent.toString();
+    }
+}
@@ -0,0 +1,85 @@
+package org.zopa.loanprovider;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test columnar market store and its loan processor.
+ */
+public class ColumnarMarketTest {
+
+    @Rule
+    public final ExpectedException exception = ExpectedException.none();
+
+    @Test
+    public void testColumnarMarketSortedAndInterned() {
+        List<LenderData> marketData = new ArrayList<LenderData>() {{
+            add(new LenderData("Martin", BigDecimal.valueOf(0.06), BigDecimal.valueOf(4320)));
+            add(new LenderData("Peter", BigDecimal.valueOf(0.03), BigDecimal.valueOf(608.5)));
+            add(new LenderData("Martin", BigDecimal.valueOf(0.03), BigDecimal.valueOf(20)));
+        }};
+
+        ColumnarMarket market = ColumnarMarket.of(marketData);
+
+        assertThat(market.size()).isEqualTo(3);
+        assertThat(market.getNamesCount()).isEqualTo(2);
+        assertThat(market.getName(0)).isEqualTo("Martin");
+        assertThat(market.getRate(0)).isEqualTo(300);
+        assertThat(market.getName(1)).isEqualTo("Peter");
+        assertThat(market.getAvailable(1)).isEqualTo(60850);
+        assertThat(market.getRate(2)).isEqualTo(600);
+        assertThat(market.getTotalAvailable()).isEqualTo(494850);
+    }
+
+    @Test
+    public void testColumnarMarketRateTooPrecise() {
+        exception.expect(ArithmeticException.class);
+        exception.expectMessage("Rate 0.00001 can not be stored in basis points");
+        ColumnarMarket.of(new ArrayList<LenderData>() {{
+            add(new LenderData("Martin", new BigDecimal("0.00001"), BigDecimal.valueOf(4320)));
+        }});
+    }
+
+    @Test
+    public void testColumnarProcessorSameAsLoanProcessor() {
+        Random random = new Random(42);
+        List<LenderData> marketData = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            marketData.add(new LenderData("Lender" + i,
+                    BigDecimal.valueOf(random.nextInt(90) + 10, 3).stripTrailingZeros(),
+                    BigDecimal.valueOf(random.nextInt(100000) + 1, random.nextInt(3))));
+        }
+        marketData.add(new LenderData("Angela", new BigDecimal("0.0605"), BigDecimal.valueOf(20)));
+
+        LoanProcessor loanProcessor = new LoanProcessor(marketData, new FrenchAmortizationMethod());
+        ColumnarLoanProcessor columnarProcessor = new ColumnarLoanProcessor(ColumnarMarket.of(marketData), new FrenchAmortizationMethod());
+
+        for (int amount = 1000; amount <= 15000; amount += 100) {
+            Loan expected = loanProcessor.findLoanFor(BigDecimal.valueOf(amount), 36).get();
+            Loan loan = columnarProcessor.findLoanFor(BigDecimal.valueOf(amount), 36).get();
+            assertThat(loan.getRate()).isEqualTo(expected.getRate());
+            assertThat(loan.getMonthlyRepayment()).isEqualTo(expected.getMonthlyRepayment());
+            assertThat(loan.getTotalRepayment()).isEqualTo(expected.getTotalRepayment());
+        }
+    }
+
+    @Test
+    public void testColumnarProcessorNotEnoughOffer() {
+        List<LenderData> marketData = new ArrayList<LenderData>() {{
+            add(new LenderData("Martin", BigDecimal.valueOf(0.05), BigDecimal.valueOf(3000)));
+        }};
+        ColumnarLoanProcessor processor = new ColumnarLoanProcessor(ColumnarMarket.of(marketData), new FrenchAmortizationMethod());
+        Optional<Loan> loan = processor.findLoanFor(BigDecimal.valueOf(8000), 36);
+        assertThat(loan).isEmpty();
+    }
+
+}
@@ -0,0 +1,234 @@
+package org.zopa.loanprovider;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static org.assertj.core.api.Assertions.tuple;
+
+/**
+ * Test delta log appends, replay and compaction.
+ */
+public class DeltaLogTest {
+
+    private static final String MARKET = "Lender,Rate,Available\nBob,0.075,640\nJane,0.069,480\n";
+
+    @Test
+    public void testReplayOnTopOfSnapshot() throws IOException {
+        String marketFile = HelpersTest.createTemporalFile(MARKET);
+        DeltaLog.pathFor(marketFile).toFile().deleteOnExit();
+
+        try (DeltaLog deltaLog = DeltaLog.open(marketFile, 0)) {
+            deltaLog.lenderAdded(new LenderData("Fred", new BigDecimal("0.071"), new BigDecimal("520")));
+            deltaLog.rateChanged("Bob", new BigDecimal("0.065"));
+            deltaLog.debited("Jane", new BigDecimal("80.50"));
+            deltaLog.credited("Fred", new BigDecimal("100"));
+            assertThat(deltaLog.size()).isEqualTo(4);
+        }
+
+        List<LenderData> marketData = FileReader.getMarketData(marketFile, DeltaLog.pathFor(marketFile).toString());
+        assertThat(marketData)
+                .extracting(LenderData::getName, LenderData::getRate, LenderData::getAvailable)
+                .containsExactly(
+                        tuple("Bob", new BigDecimal("0.065"), new BigDecimal("640")),
+                        tuple("Jane", new BigDecimal("0.069"), new BigDecimal("399.50")),
+                        tuple("Fred", new BigDecimal("0.071"), new BigDecimal("620")));
+        assertThat(DeltaLog.load(marketFile)).usingFieldByFieldElementComparator().containsExactlyElementsOf(marketData);
+    }
+
+    @Test
+    public void testCompaction() throws IOException {
+        String marketFile = HelpersTest.createTemporalFile(MARKET);
+        DeltaLog.pathFor(marketFile).toFile().deleteOnExit();
+
+        try (DeltaLog deltaLog = DeltaLog.open(marketFile, 3)) {
+            deltaLog.debited("Bob", new BigDecimal("40"));
+            deltaLog.debited("Bob", new BigDecimal("100"));
+            deltaLog.credited("Jane", new BigDecimal("20"));
+            // Compacted: snapshot updated and log empty
+            assertThat(deltaLog.size()).isEqualTo(0);
+            assertThat(MappedFileReader.getMarketData(marketFile))
+                    .extracting(LenderData::getName, LenderData::getAvailable)
+                    .containsExactly(tuple("Bob", new BigDecimal("500")), tuple("Jane", new BigDecimal("500")));
+
+            deltaLog.debited("Jane", new BigDecimal("50"));
+        }
+
+        assertThat(DeltaLog.load(marketFile))
+                .extracting(LenderData::getName, LenderData::getAvailable)
+                .containsExactly(tuple("Bob", new BigDecimal("500")), tuple("Jane", new BigDecimal("450")));
+    }
+
+    @Test
+    public void testPartiallyWrittenRecordIsIgnored() throws IOException {
+        String marketFile = HelpersTest.createTemporalFile(MARKET);
+        Path logFile = DeltaLog.pathFor(marketFile);
+        logFile.toFile().deleteOnExit();
+
+        try (DeltaLog deltaLog = DeltaLog.open(marketFile, 0)) {
+            deltaLog.debited("Bob", new BigDecimal("40"));
+            deltaLog.debited("Jane", new BigDecimal("80"));
+        }
+        try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.WRITE)) {
+            channel.truncate(Files.size(logFile) - 2);
+        }
+
+        assertThat(DeltaLog.load(marketFile))
+                .extracting(LenderData::getAvailable)
+                .containsExactly(new BigDecimal("600"), new BigDecimal("480"));
+
+        // Opening the log again drops the partial record before appending
+        try (DeltaLog deltaLog = DeltaLog.open(marketFile, 0)) {
+            assertThat(deltaLog.size()).isEqualTo(1);
+            deltaLog.credited("Jane", new BigDecimal("20"));
+        }
+        assertThat(DeltaLog.load(marketFile))
+                .extracting(LenderData::getAvailable)
+                .containsExactly(new BigDecimal("600"), new BigDecimal("500"));
+    }
+
+    @Test
+    public void testDebitOverAvailableNotAppended() throws IOException {
+        String marketFile = HelpersTest.createTemporalFile(MARKET);
+        DeltaLog.pathFor(marketFile).toFile().deleteOnExit();
+
+        try (DeltaLog deltaLog = DeltaLog.open(marketFile, 0)) {
+            deltaLog.debited("Jane", new BigDecimal("400"));
+            try {
+                deltaLog.debited("Jane", new BigDecimal("100"));
+                fail("Debit over available appended");
+            } catch (IllegalArgumentException e) {
+                assertThat(e.getMessage()).isEqualTo("Lender Jane has not enough available");
+            }
+            assertThat(deltaLog.size()).isEqualTo(1);
+        }
+
+        assertThat(DeltaLog.load(marketFile))
+                .extracting(LenderData::getAvailable)
+                .containsExactly(new BigDecimal("640"), new BigDecimal("80"));
+    }
+
+    @Test
+    public void testInvalidRecordsNotAppended() throws IOException {
+        String marketFile = HelpersTest.createTemporalFile(MARKET);
+        DeltaLog.pathFor(marketFile).toFile().deleteOnExit();
+
+        try (DeltaLog deltaLog = DeltaLog.open(marketFile, 0)) {
+            assertRejected(() -> deltaLog.rateChanged("Anna", new BigDecimal("0.07")), "Lender Anna not found or repeated");
+            assertRejected(() -> deltaLog.rateChanged("Bob", BigDecimal.ZERO), "Lender Bob rate must be positive");
+            assertRejected(() -> deltaLog.credited("Bob", new BigDecimal("-5")), "Lender Bob amount must be positive");
+            assertRejected(() -> deltaLog.lenderAdded(new LenderData("Bob", new BigDecimal("0.07"), BigDecimal.TEN)), "Lender Bob already exists");
+            assertRejected(() -> deltaLog.lenderAdded(new LenderData("Ann,a", new BigDecimal("0.07"), BigDecimal.TEN)),
+                    "Lender name Ann,a must not be empty nor have commas or new lines");
+            assertRejected(() -> deltaLog.lenderAdded(new LenderData("Anna\nBob", new BigDecimal("0.07"), BigDecimal.TEN)),
+                    "Lender name Anna\nBob must not be empty nor have commas or new lines");
+            assertThat(deltaLog.size()).isEqualTo(0);
+        }
+
+        assertThat(DeltaLog.load(marketFile)).extracting(LenderData::getName).containsExactly("Bob", "Jane");
+    }
+
+    @Test
+    public void testValuesNotFittingBinarySnapshotNotAppended() throws IOException {
+        String marketFile = HelpersTest.createTemporalFile();
+        BinaryMarketFile.write(ColumnarMarket.of(FileReader.getMarketData(HelpersTest.createTemporalFile(MARKET))), marketFile);
+        DeltaLog.pathFor(marketFile).toFile().deleteOnExit();
+
+        try (DeltaLog deltaLog = DeltaLog.open(marketFile, 0)) {
+            assertRejected(() -> deltaLog.rateChanged("Bob", new BigDecimal("0.07125")),
+                    "Lender Bob values do not fit the binary market data file");
+            assertRejected(() -> deltaLog.debited("Jane", new BigDecimal("0.005")),
+                    "Lender Jane values do not fit the binary market data file");
+            assertRejected(() -> deltaLog.lenderAdded(new LenderData("Fred", new BigDecimal("0.071"), new BigDecimal("520.001"))),
+                    "Lender Fred values do not fit the binary market data file");
+            deltaLog.debited("Jane", new BigDecimal("80.50"));
+            deltaLog.compact();
+            deltaLog.credited("Jane", new BigDecimal("0.50"));
+        }
+
+        assertThat(DeltaLog.load(marketFile)).extracting(LenderData::getAvailable)
+                .containsExactly(new BigDecimal("400.00"), new BigDecimal("640"));
+    }
+
+    @Test
+    public void testNameTooLongNotAppended() throws IOException {
+        String marketFile = HelpersTest.createTemporalFile(MARKET);
+        Path logFile = DeltaLog.pathFor(marketFile);
+        logFile.toFile().deleteOnExit();
+        char[] name = new char[40_000];
+        Arrays.fill(name, '\u00e9');
+
+        try (DeltaLog deltaLog = DeltaLog.open(marketFile, 0)) {
+            long logSize = Files.size(logFile);
+            assertRejected(() -> deltaLog.lenderAdded(new LenderData(new String(name), new BigDecimal("0.07"), BigDecimal.TEN)),
+                    "Lender name " + new String(name, 0, 16) + "... is too long");
+            deltaLog.debited("Bob", new BigDecimal("40"));
+            assertThat(Files.size(logFile)).isGreaterThan(logSize);
+        }
+
+        assertThat(DeltaLog.load(marketFile)).extracting(LenderData::getAvailable)
+                .containsExactly(new BigDecimal("600"), new BigDecimal("480"));
+    }
+
+    @Test
+    public void testCrashBetweenCompactionMovesIgnoresOldLog() throws IOException {
+        String marketFile = HelpersTest.createTemporalFile(MARKET);
+        Path logFile = DeltaLog.pathFor(marketFile);
+        logFile.toFile().deleteOnExit();
+
+        try (DeltaLog deltaLog = DeltaLog.open(marketFile, 0)) {
+            deltaLog.debited("Bob", new BigDecimal("40"));
+            deltaLog.lenderAdded(new LenderData("Fred", new BigDecimal("0.071"), new BigDecimal("520")));
+            byte[] oldLog = Files.readAllBytes(logFile);
+            deltaLog.compact();
+            // As if the snapshot was moved but not the log
+            Files.write(logFile, oldLog);
+        }
+
+        assertThat(DeltaLog.load(marketFile))
+                .extracting(LenderData::getName, LenderData::getAvailable)
+                .containsExactly(tuple("Bob", new BigDecimal("600")), tuple("Jane", new BigDecimal("480")), tuple("Fred", new BigDecimal("520")));
+        try (DeltaLog deltaLog = DeltaLog.open(marketFile, 0)) {
+            assertThat(deltaLog.size()).isEqualTo(0);
+            deltaLog.debited("Fred", new BigDecimal("20"));
+        }
+        assertThat(DeltaLog.load(marketFile)).extracting(LenderData::getAvailable)
+                .containsExactly(new BigDecimal("600"), new BigDecimal("480"), new BigDecimal("500"));
+    }
+
+    @Test
+    public void testRecordFlushedWhenAppended() throws IOException {
+        String marketFile = HelpersTest.createTemporalFile(MARKET);
+        DeltaLog.pathFor(marketFile).toFile().deleteOnExit();
+
+        try (DeltaLog deltaLog = DeltaLog.open(marketFile, 0, true)) {
+            deltaLog.debited("Bob", new BigDecimal("40"));
+            // Not closed yet: another reader sees the record
+            assertThat(DeltaLog.load(marketFile)).extracting(LenderData::getAvailable)
+                    .containsExactly(new BigDecimal("600"), new BigDecimal("480"));
+        }
+    }
+
+    private static void assertRejected(ThrowingRunnable append, String message) throws IOException {
+        try {
+            append.run();
+            fail("Record appended");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage()).isEqualTo(message);
+        }
+    }
+
+    @FunctionalInterface
+    private interface ThrowingRunnable {
+        void run() throws IOException;
+    }
+}
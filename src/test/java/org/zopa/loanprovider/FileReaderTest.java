@@ -1,5 +1,6 @@
 package org.zopa.loanprovider;
 
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -8,6 +9,7 @@ import org.junit.rules.ExpectedException;
 import java.io.IOException;
 import java.math.BigDecimal;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.zopa.loanprovider.HelpersTest.createTemporalFile;
@@ -18,6 +20,7 @@ import static org.zopa.loanprovider.HelpersTest.createTemporalFile;
 public class FileReaderTest {
 
     private String marketDataFilePath;
+    private ForkJoinPool pool;
 
     @Rule
     public final ExpectedException exception = ExpectedException.none();
@@ -25,6 +28,12 @@ public class FileReaderTest {
     @Before
     public void setUp() {
         marketDataFilePath = getClass().getClassLoader().getResource("market.csv").getFile();
+        pool = new ForkJoinPool(4);
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdown();
     }
 
     @Test
@@ -55,4 +64,114 @@ public class FileReaderTest {
         FileReader.getMarketData("path/invalid");
     }
 
+    @Test
+    public void testMappedFileReaderSameAsFileReader() throws IOException {
+        List<LenderData> expected = FileReader.getMarketData(marketDataFilePath);
+        List<LenderData> lenders = MappedFileReader.getMarketData(marketDataFilePath);
+        assertSameLenders(lenders, expected);
+    }
+
+    @Test
+    public void testMappedFileReaderDecimalsAndLineEndings() throws IOException {
+        String data = "Lender,Rate,Available\r\nBob,0.0750,640.5\r\nJose,.07,+20\nAnna,1,12345678901234567890.25";
+        List<LenderData> lenders = MappedFileReader.getMarketData(createTemporalFile(data));
+        assertThat(lenders).extracting(LenderData::getName).containsExactly("Bob", "Jose", "Anna");
+        assertThat(lenders.get(0).getRate()).isEqualTo(new BigDecimal("0.0750"));
+        assertThat(lenders.get(0).getAvailable()).isEqualTo(new BigDecimal("640.5"));
+        assertThat(lenders.get(1).getRate()).isEqualTo(new BigDecimal(".07"));
+        assertThat(lenders.get(1).getAvailable()).isEqualTo(new BigDecimal("20"));
+        assertThat(lenders.get(2).getAvailable()).isEqualTo(new BigDecimal("12345678901234567890.25"));
+    }
+
+    @Test
+    public void testMappedFileReaderCorruptedLine() throws IOException {
+        String data = "Lender,Rate,Available\nBob,0.075,640\nJane,0.0x9,480\n";
+        exception.expect(RuntimeException.class);
+        exception.expectMessage("Error reading market data file. Invalid line 3");
+        MappedFileReader.getMarketData(createTemporalFile(data));
+    }
+
+    @Test
+    public void testMappedFileReaderAcceptsSameLinesAsFileReader() throws IOException {
+        String path = createTemporalFile("Lender,Rate,Available\nBob,7.5E-2,640,\nJane,0.069,4.8e+2,,\nAnna,0.071,123456789012345678901234.5\n");
+        assertSameLenders(MappedFileReader.getMarketData(path), FileReader.getMarketData(path));
+        assertSameLenders(MappedFileReader.getMarketDataParallel(path, pool), FileReader.getMarketData(path));
+    }
+
+    @Test
+    public void testMappedFileReaderExtraValue() throws IOException {
+        String data = "Lender,Rate,Available\nBob,0.075,640,,\nJane,0.069,480,1\n";
+        exception.expect(RuntimeException.class);
+        exception.expectMessage("Error reading market data file. Invalid line 3");
+        MappedFileReader.getMarketData(createTemporalFile(data));
+    }
+
+    @Test
+    public void testMappedFileReaderSlowPathReportsLineNumber() throws IOException {
+        String data = "Lender,Rate,Available\nBob,0.075,640\nJane,0.069,123456789012345678901234x\n";
+        exception.expect(RuntimeException.class);
+        exception.expectMessage("Error reading market data file. Invalid line 3");
+        MappedFileReader.getMarketData(createTemporalFile(data));
+    }
+
+    @Test
+    public void testMappedFileReaderInvalidExponentReportsLineNumber() throws IOException {
+        String data = "Lender,Rate,Available\nBob,0.075e,640\n";
+        exception.expect(RuntimeException.class);
+        exception.expectMessage("Error reading market data file. Invalid line 2");
+        MappedFileReader.getMarketData(createTemporalFile(data));
+    }
+
+    @Test
+    public void testMappedFileReaderEmpty() throws IOException {
+        assertThat(MappedFileReader.getMarketData(createTemporalFile())).isEmpty();
+        assertThat(MappedFileReader.getMarketData(createTemporalFile("Lender,Rate,Available"))).isEmpty();
+    }
+
+    @Test
+    public void testMappedFileReaderInvalidPath() throws IOException {
+        exception.expect(IOException.class);
+        MappedFileReader.getMarketData("path/invalid");
+    }
+
+    @Test
+    public void testParallelReaderSameAsSequential() throws IOException {
+        String path = createTemporalFile(buildMarketData(150000, null));
+        assertSameLenders(MappedFileReader.getMarketDataParallel(path, pool), MappedFileReader.getMarketData(path));
+        assertSameLenders(MappedFileReader.getMarketDataParallel(marketDataFilePath), FileReader.getMarketData(marketDataFilePath));
+    }
+
+    @Test
+    public void testParallelReaderReportsLineNumber() throws IOException {
+        String path = createTemporalFile(buildMarketData(150000, 140000));
+        exception.expect(RuntimeException.class);
+        exception.expectMessage("Error reading market data file. Invalid line 140002");
+        MappedFileReader.getMarketDataParallel(path, pool);
+    }
+
+    @Test
+    public void testParallelReaderEmpty() throws IOException {
+        assertThat(MappedFileReader.getMarketDataParallel(createTemporalFile())).isEmpty();
+        assertThat(MappedFileReader.getMarketDataParallel(createTemporalFile("Lender,Rate,Available\n"))).isEmpty();
+    }
+
+    private static String buildMarketData(int lenders, Integer invalidLender) {
+        StringBuilder data = new StringBuilder("Lender,Rate,Available\n");
+        for (int i = 0; i < lenders; i++) {
+            data.append("Lender").append(i).append(',')
+                    .append(i == (invalidLender == null ? -1 : invalidLender) ? "0.0x7" : "0.0" + (i % 90 + 10))
+                    .append(',').append(i % 1000 + 1).append('\n');
+        }
+        return data.toString();
+    }
+
+    private static void assertSameLenders(List<LenderData> lenders, List<LenderData> expected) {
+        assertThat(lenders).hasSameSizeAs(expected);
+        for (int i = 0; i < expected.size(); i++) {
+            assertThat(lenders.get(i).getName()).isEqualTo(expected.get(i).getName());
+            assertThat(lenders.get(i).getRate()).isEqualTo(expected.get(i).getRate());
+            assertThat(lenders.get(i).getAvailable()).isEqualTo(expected.get(i).getAvailable());
+        }
+    }
+
 }
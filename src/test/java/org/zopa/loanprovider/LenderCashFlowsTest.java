@@ -0,0 +1,111 @@
+package org.zopa.loanprovider;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test lender allocations of loans and their cash flows.
+ */
+public class LenderCashFlowsTest {
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void testAllocationOfQuote() {
+        List<LenderData> marketData = Arrays.asList(
+                new LenderData("Bob", new BigDecimal("0.075"), new BigDecimal("640")),
+                new LenderData("Jane", new BigDecimal("0.069"), new BigDecimal("480")),
+                new LenderData("Fred", new BigDecimal("0.071"), new BigDecimal("520")));
+        MarketSnapshot market = MarketSnapshot.of(marketData);
+
+        for (LoanProcessor processor : Arrays.asList(
+                new LoanProcessor(market, new FrenchAmortizationMethod()),
+                new LoanProcessor(new PrefixSumIndex(market), new FrenchAmortizationMethod()))) {
+            LoanAllocation allocation = processor.findLoanFor(BigDecimal.valueOf(1000), 36).get().getAllocation().get();
+
+            assertThat(allocation.size()).isEqualTo(2);
+            assertThat(allocation.getLender(0).getName()).isEqualTo("Jane");
+            assertThat(allocation.getAmount(0)).isEqualByComparingTo("480");
+            assertThat(allocation.getLender(1).getName()).isEqualTo("Fred");
+            assertThat(allocation.getAmount(1)).isEqualByComparingTo("520");
+        }
+    }
+
+    @Test
+    public void testIndexedAllocationSameAsWalk() {
+        MarketSnapshot market = MarketSnapshot.of(QuoteEngineTest.randomMarket(new Random(20), 3000));
+        LoanProcessor processor = new LoanProcessor(market, new FrenchAmortizationMethod());
+        LoanProcessor indexed = new LoanProcessor(new PrefixSumIndex(market), new FrenchAmortizationMethod());
+
+        for (int amount = Main.MIN_AMOUNT; amount <= Main.MAX_AMOUNT; amount += 1300) {
+            LoanAllocation expected = processor.findLoanFor(BigDecimal.valueOf(amount), 36).get().getAllocation().get();
+            LoanAllocation allocation = indexed.findLoanFor(BigDecimal.valueOf(amount), 36).get().getAllocation().get();
+
+            assertThat(allocation.size()).isEqualTo(expected.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertThat(allocation.getLender(i)).isSameAs(expected.getLender(i));
+                assertThat(allocation.getAmount(i)).isEqualByComparingTo(expected.getAmount(i));
+            }
+        }
+    }
+
+    @Test
+    public void testCashFlows() {
+        LoanProcessor processor = new LoanProcessor(QuoteEngineTest.randomMarket(new Random(21), 500), new FrenchAmortizationMethod());
+        List<Loan> portfolio = new ArrayList<>();
+        for (int amount = Main.MIN_AMOUNT; amount <= Main.MAX_AMOUNT; amount += 100) {
+            portfolio.add(processor.findLoanFor(BigDecimal.valueOf(amount), 36).get());
+        }
+
+        LenderCashFlows cashFlows = LenderCashFlows.of(portfolio);
+        long[][] matrix = cashFlows.toMatrix();
+        assertThat(matrix).hasSize(portfolio.size());
+
+        for (int loan = 0; loan < portfolio.size(); loan++) {
+            Loan quote = portfolio.get(loan);
+            BigDecimal payment = quote.getMonthlyRepayment().setScale(2, BigDecimal.ROUND_CEILING);
+            // Shares add up to the monthly repayment, each one within a penny of the exact share
+            assertThat(Arrays.stream(matrix[loan]).sum()).isEqualTo(payment.movePointRight(2).longValueExact());
+            for (Map.Entry<LenderData, BigDecimal> given : quote.getAllocation().get().asMap().entrySet()) {
+                int lender = indexOf(cashFlows, given.getKey());
+                BigDecimal exact = payment.multiply(given.getValue()).divide(quote.getRequestedAmount(), 10, BigDecimal.ROUND_HALF_UP);
+                assertThat(BigDecimal.valueOf(matrix[loan][lender], 2).subtract(exact).abs()).isLessThan(new BigDecimal("0.01"));
+            }
+        }
+        for (int lender = 0; lender < cashFlows.getLendersCount(); lender++) {
+            long total = 0;
+            for (long[] row : matrix) {
+                total += row[lender];
+            }
+            assertThat(cashFlows.getMonthlyCashFlow(lender)).isEqualTo(total);
+            assertThat(cashFlows.getMonthlyCashFlow(cashFlows.getLender(lender))).isEqualTo(BigDecimal.valueOf(total, 2));
+        }
+    }
+
+    @Test
+    public void testLoanWithoutAllocation() {
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage("Loans must be quoted with their lender allocation");
+        LenderCashFlows.of(Arrays.asList(new Loan(BigDecimal.ONE, BigDecimal.ONE, BigDecimal.ONE, BigDecimal.ONE)));
+    }
+
+    private static int indexOf(LenderCashFlows cashFlows, LenderData lender) {
+        for (int i = 0; i < cashFlows.getLendersCount(); i++) {
+            if (cashFlows.getLender(i) == lender) {
+                return i;
+            }
+        }
+        throw new AssertionError(lender.getName());
+    }
+}
@@ -5,12 +5,16 @@ import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Random;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assume.assumeTrue;
 import static org.zopa.loanprovider.HelpersTest.*;
 
 /**
@@ -179,4 +183,56 @@ public class LoanProviderTest {
         assertThat(payment.setScale(2, BigDecimal.ROUND_CEILING)).isEqualTo(BigDecimal.valueOf(29.98));
     }
 
+    @Test
+    public void testFixedPointRateSameAsBigDecimal() {
+        Random random = new Random(18);
+        List<LenderData> marketData = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            // Mixed rate scales (with trailing zeros too) and amounts with pence
+            marketData.add(new LenderData("Lender" + i,
+                    BigDecimal.valueOf(random.nextInt(900) + 100, random.nextInt(4) + 3),
+                    BigDecimal.valueOf(random.nextInt(100_000) + 1, random.nextInt(3))));
+        }
+        marketData.add(new LenderData("Empty", BigDecimal.valueOf(1, 4), BigDecimal.ZERO));
+        LoanProcessor processor = new LoanProcessor(marketData, new FrenchAmortizationMethod());
+        assertThat(processor.getMarket().isFixedPoint()).isTrue();
+
+        for (BigDecimal amount : new BigDecimal[]{new BigDecimal("0.01"), new BigDecimal("1000"),
+                new BigDecimal("1234.56"), new BigDecimal("15000"), new BigDecimal("150000.0")}) {
+            Loan expected = processor.calculateLoanFor(processor.collectLendersFor(amount), amount, 36);
+            Loan loan = processor.findLoanFor(amount, 36).get();
+            // Same value and scale
+            assertThat(loan.getRate()).isEqualTo(expected.getRate());
+            assertThat(loan).isEqualToIgnoringGivenFields(expected, "allocation");
+            Map<LenderData, BigDecimal> expectedAllocation = expected.getAllocation().get().asMap();
+            assertThat(loan.getAllocation().get().asMap()).hasSameSizeAs(expectedAllocation);
+            loan.getAllocation().get().asMap().forEach((lender, given) ->
+                    assertThat(given).isEqualByComparingTo(expectedAllocation.get(lender)));
+        }
+    }
+
+    @Test
+    public void testLenderCollectionAllocationFree() {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+
+        LoanProcessor processor = new LoanProcessor(QuoteEngineTest.randomMarket(new Random(19), 10_000), new FrenchAmortizationMethod());
+        LenderAllocation allocation = new LenderAllocation();
+        for (int i = 0; i < 20_000; i++) {
+            processor.collectLendersFor(1_500_000, allocation);
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 10_000; i++) {
+            processor.collectLendersFor(1_500_000, allocation);
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        assertThat(allocation.size()).isGreaterThan(1);
+        // Only the measurement itself may allocate
+        assertThat(allocated).isLessThan(1024);
+    }
+
 }
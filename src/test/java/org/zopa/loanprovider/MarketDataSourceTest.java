@@ -0,0 +1,112 @@
+package org.zopa.loanprovider;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+/**
+ * Test async market data sources and quotes while loading.
+ */
+public class MarketDataSourceTest {
+
+    private final AsyncQuoter quoter = new AsyncQuoter(new FrenchAmortizationMethod());
+
+    @Test
+    public void testQuoteFromEverySource() throws IOException {
+        String binaryFile = HelpersTest.createTemporalFile();
+        BinaryMarketFile.convert("market.csv", binaryFile);
+        List<LenderData> marketData = FileReader.getMarketData("market.csv");
+        Loan expected = new LoanProcessor(marketData, new FrenchAmortizationMethod()).findLoanFor(BigDecimal.valueOf(1700), 36).get();
+
+        for (MarketDataSource source : new MarketDataSource[]{
+                new FileMarketDataSource("market.csv"),
+                new BinaryMarketDataSource(binaryFile),
+                new InMemoryMarketDataSource(marketData),
+                new InMemoryMarketDataSource(MarketSnapshot.of(marketData))}) {
+            Optional<Loan> loan = quoter.findLoanFor(source, BigDecimal.valueOf(1700), 36).join();
+            assertThat(loan.get()).isEqualToIgnoringGivenFields(expected, "allocation");
+        }
+        assertThat(quoter.findLoanFor(new FileMarketDataSource("market.csv"), BigDecimal.valueOf(15000), 36).join()).isEmpty();
+    }
+
+    @Test
+    public void testSortedSourceQuotesBeforeFullLoad() {
+        MarketSnapshot market = MarketSnapshot.of(QuoteEngineTest.randomMarket(new Random(21), 100_000));
+        AtomicInteger read = new AtomicInteger();
+        CountingSource source = new CountingSource(market, read);
+
+        Loan loan = quoter.findLoanFor(source, BigDecimal.valueOf(15000), 36).join().get();
+
+        Loan expected = new LoanProcessor(market, new FrenchAmortizationMethod()).findLoanFor(BigDecimal.valueOf(15000), 36).get();
+        assertThat(loan).isEqualToIgnoringGivenFields(expected, "allocation");
+        // Read ahead is bounded: batches consumed plus the ones ready
+        assertThat(read.get()).isLessThan(1000);
+    }
+
+    @Test
+    public void testBackPressure() throws InterruptedException {
+        MarketSnapshot market = MarketSnapshot.of(QuoteEngineTest.randomMarket(new Random(22), 10_000));
+        AtomicInteger read = new AtomicInteger();
+        CountingSource source = new CountingSource(market, read);
+
+        assertThat(source.nextBatch().join()).hasSize(10);
+        TimeUnit.MILLISECONDS.sleep(200);
+        // Not consumed: the reader waits with 4 batches ready (and 1 in progress)
+        assertThat(read.get()).isLessThanOrEqualTo(10 * 6);
+
+        source.close();
+        assertThat(source.nextBatch().join()).isEmpty();
+    }
+
+    @Test
+    public void testLoadAll() throws IOException {
+        ExecutorService reader = Executors.newSingleThreadExecutor();
+        List<LenderData> marketData = quoter.loadAll(new FileMarketDataSource("market.csv", 2, 1, reader)).join();
+        reader.shutdown();
+        assertThat(marketData).usingElementComparatorOnFields("name", "rate", "available")
+                .containsExactlyElementsOf(FileReader.getMarketData("market.csv"));
+    }
+
+    @Test
+    public void testReadError() throws IOException {
+        String file = HelpersTest.createTemporalFile("Lender,Rate,Available\nBob,0.075,640\nJane");
+        try {
+            quoter.loadAll(new FileMarketDataSource(file)).join();
+            fail("Error expected");
+        } catch (CompletionException e) {
+            assertThat(e.getCause()).hasMessageContaining("Error reading market data file");
+        }
+    }
+
+    private static class CountingSource extends InMemoryMarketDataSource {
+
+        private final AtomicInteger read;
+
+        CountingSource(MarketSnapshot market, AtomicInteger read) {
+            super(market, 10, 4, runnable -> {
+                Thread thread = new Thread(runnable);
+                thread.setDaemon(true);
+                thread.start();
+            });
+            this.read = read;
+        }
+
+        @Override
+        protected Stream<LenderData> open() {
+            return super.open().peek(lender -> read.incrementAndGet());
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package org.zopa.loanprovider;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test hot reload of market data.
+ */
+public class MarketWatcherTest {
+
+    private static final String MARKET = "Lender,Rate,Available\nBob,0.075,640\nJane,0.069,480\nFred,0.071,520\n";
+    private static final String MARKET_UPDATED = "Lender,Rate,Available\nBob,0.065,640\nFred,0.071,520\nAnna,0.05,300\n";
+
+    private Path marketFile;
+    private QuoteEngine engine;
+
+    @Before
+    public void setUp() throws IOException {
+        marketFile = Files.createTempDirectory("market-watch-").resolve("market.csv");
+        marketFile.toFile().deleteOnExit();
+        write(MARKET);
+        engine = new QuoteEngine(FileReader.getMarketData(marketFile.toString()), new FrenchAmortizationMethod());
+    }
+
+    @Test
+    public void testReloadAppliesDifferences() throws IOException {
+        MarketWatcher watcher = new MarketWatcher(marketFile, engine);
+        long version = engine.getMarket().getVersion();
+
+        write(MARKET_UPDATED);
+        MarketWatcher.Changes changes = watcher.reload();
+
+        assertThat(changes.getAdded()).isEqualTo(1);
+        assertThat(changes.getRemoved()).isEqualTo(1);
+        assertThat(changes.getChanged()).isEqualTo(1);
+        assertThat(changes.isRebuilt()).isFalse();
+        assertThat(engine.getMarket().getVersion()).isGreaterThan(version);
+        assertThat(engine.getMarket()).extracting(LenderData::getName).containsExactly("Anna", "Bob", "Fred");
+        assertSameLoan(new LoanProcessor(FileReader.getMarketData(marketFile.toString()), new FrenchAmortizationMethod()));
+
+        // Nothing changed: market is not published again
+        version = engine.getMarket().getVersion();
+        assertThat(watcher.reload().hasChanges()).isFalse();
+        assertThat(engine.getMarket().getVersion()).isEqualTo(version);
+    }
+
+    @Test
+    public void testReloadKeepsMarketWhenFileIsCorrupted() throws IOException {
+        MarketWatcher watcher = new MarketWatcher(marketFile, engine);
+        MarketSnapshot market = engine.getMarket();
+
+        write("Lender,Rate,Available\nBob,0.0");
+        try {
+            watcher.reload();
+        } catch (RuntimeException e) {
+            assertThat(e.getMessage()).contains("Error reading market data file");
+        }
+        assertThat(engine.getMarket()).isSameAs(market);
+    }
+
+    @Test
+    public void testReloadAcceptsSameFilesAsLoaders() throws IOException {
+        MarketWatcher watcher = new MarketWatcher(marketFile, engine);
+
+        // Any header line, last line without a new line
+        write("Name,Rate,Amount\nBob,0.075,640\nJane,0.069,480");
+        MarketWatcher.Changes changes = watcher.reload();
+
+        assertThat(changes.getRemoved()).isEqualTo(1);
+        assertThat(engine.getMarket()).extracting(LenderData::getName).containsExactly("Jane", "Bob");
+    }
+
+    @Test
+    public void testWatcherStartsFromEngineMarket() throws IOException {
+        MarketSnapshot market = engine.getMarket();
+        MarketWatcher watcher = new MarketWatcher(marketFile, engine);
+
+        assertThat(watcher.reload().hasChanges()).isFalse();
+        write(MARKET_UPDATED);
+        watcher.reload();
+        // Unchanged lenders keep the instances of the engine market
+        assertThat(engine.getMarket().get(2)).isSameAs(market.get(1));
+    }
+
+    @Test
+    public void testSnapshotBuiltFromChanges() throws IOException {
+        MarketWatcher watcher = new MarketWatcher(marketFile, engine);
+
+        write(MARKET_UPDATED);
+        watcher.reload();
+
+        MarketSnapshot expected = MarketSnapshot.of(FileReader.getMarketData(marketFile.toString()));
+        MarketSnapshot market = engine.getMarket();
+        assertThat(market.getTotalAvailable()).isEqualByComparingTo(expected.getTotalAvailable());
+        assertThat(market.isFixedPoint()).isTrue();
+        for (int i = 0; i < market.size(); i++) {
+            assertThat(market.get(i).getName()).isEqualTo(expected.get(i).getName());
+            assertThat(BigDecimal.valueOf(market.getFixedRate(i), market.getRateScale()))
+                    .isEqualByComparingTo(BigDecimal.valueOf(expected.getFixedRate(i), expected.getRateScale()));
+            assertThat(market.getRateScale(i)).isEqualTo(expected.getRateScale(i));
+            assertThat(market.getFixedAvailable(i)).isEqualTo(expected.getFixedAvailable(i));
+        }
+    }
+
+    @Test
+    public void testWatcherReloadsOnFileChange() throws Exception {
+        try (MarketWatcher watcher = new MarketWatcher(marketFile, engine)) {
+            watcher.start();
+            long version = engine.getMarket().getVersion();
+
+            write(MARKET_UPDATED);
+
+            long deadline = System.currentTimeMillis() + 30000;
+            while (engine.getMarket().getVersion() == version && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            assertThat(engine.getMarket().getVersion()).isGreaterThan(version);
+        }
+    }
+
+    private void assertSameLoan(LoanProcessor expected) {
+        Loan loan = engine.findLoanFor(BigDecimal.valueOf(1000), 36).get();
+        assertThat(loan.getRate()).isEqualTo(expected.findLoanFor(BigDecimal.valueOf(1000), 36).get().getRate());
+    }
+
+    private void write(String data) throws IOException {
+        Files.write(marketFile, data.getBytes(StandardCharsets.UTF_8));
+    }
+
+}
@@ -0,0 +1,110 @@
+package org.zopa.loanprovider;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test lenders matched by each strategy and the loans quoted for them.
+ */
+public class MatchingStrategyTest {
+
+    private static final LenderData MARTIN = new LenderData("Martin", BigDecimal.valueOf(0.03), BigDecimal.valueOf(400));
+    private static final LenderData PETER = new LenderData("Peter", BigDecimal.valueOf(0.06), BigDecimal.valueOf(60));
+    private static final LenderData JOHN = new LenderData("John", BigDecimal.valueOf(0.02), BigDecimal.valueOf(1200));
+    private static final LenderData JANE = new LenderData("Jane", BigDecimal.valueOf(0.09), BigDecimal.valueOf(500));
+
+    private static final MarketSnapshot MARKET = MarketSnapshot.of(new ArrayList<LenderData>() {{
+        add(MARTIN);
+        add(PETER);
+        add(JOHN);
+        add(JANE);
+    }});
+
+    @Test
+    public void testCheapestFirstSameAsLoanProcessor() {
+        MarketSnapshot market = MarketSnapshot.of(QuoteEngineTest.randomMarket(new Random(23), 2000));
+        LoanProcessor processor = new LoanProcessor(market, new FrenchAmortizationMethod());
+        LoanProcessor strategyProcessor = new LoanProcessor(market, new FrenchAmortizationMethod(), new CheapestFirstStrategy());
+
+        for (int amount = 1000; amount <= 15000; amount += 100) {
+            Loan expected = processor.findLoanFor(BigDecimal.valueOf(amount), 36).get();
+            Loan loan = strategyProcessor.findLoanFor(BigDecimal.valueOf(amount), 36).get();
+            assertThat(loan).isEqualToIgnoringGivenFields(expected, "allocation");
+            LoanAllocation allocation = loan.getAllocation().get();
+            assertThat(allocation.size()).isEqualTo(expected.getAllocation().get().size());
+            for (int i = 0; i < allocation.size(); i++) {
+                assertThat(allocation.getLender(i)).isSameAs(expected.getAllocation().get().getLender(i));
+                assertThat(allocation.getAmount(i)).isEqualByComparingTo(expected.getAllocation().get().getAmount(i));
+            }
+        }
+        assertThat(strategyProcessor.findLoanFor(market.getTotalAvailable().add(BigDecimal.ONE), 36)).isEmpty();
+    }
+
+    @Test
+    public void testProRataUnderRateCap() {
+        LoanProcessor processor = new LoanProcessor(MARKET, new FrenchAmortizationMethod(), new ProRataStrategy(BigDecimal.valueOf(0.06)));
+
+        Loan loan = processor.findLoanFor(BigDecimal.valueOf(1000), 36).get();
+
+        Map<LenderData, BigDecimal> amounts = loan.getAllocation().get().asMap();
+        assertThat(amounts).containsOnlyKeys(JOHN, MARTIN, PETER);
+        assertThat(amounts.get(JOHN)).isEqualTo("722.89");
+        assertThat(amounts.get(MARTIN)).isEqualTo("240.96");
+        assertThat(amounts.get(PETER)).isEqualTo("36.15");
+        assertThat(loan.getRate()).isEqualByComparingTo("0.02386");
+        // Enough in the whole market, not under the cap
+        assertThat(processor.findLoanFor(BigDecimal.valueOf(2000), 36)).isEmpty();
+    }
+
+    @Test
+    public void testProRataAddsUpToAmount() {
+        MarketSnapshot market = MarketSnapshot.of(QuoteEngineTest.randomMarket(new Random(29), 1000));
+        MatchingStrategy.Matcher matcher = new ProRataStrategy(BigDecimal.valueOf(0.05)).index(market);
+
+        for (int amount = 1000; amount <= 15000; amount += 700) {
+            Map<LenderData, BigDecimal> amounts = matcher.match(BigDecimal.valueOf(amount)).get();
+            assertThat(amounts.values().stream().reduce(BigDecimal.ZERO, BigDecimal::add)).isEqualByComparingTo(BigDecimal.valueOf(amount));
+            amounts.forEach((lenderData, borrowed) -> {
+                assertThat(lenderData.getRate()).isLessThanOrEqualTo(BigDecimal.valueOf(0.05));
+                assertThat(borrowed).isLessThanOrEqualTo(lenderData.getAvailable());
+            });
+        }
+    }
+
+    @Test
+    public void testFewestLenders() {
+        LoanProcessor processor = new LoanProcessor(MARKET, new FrenchAmortizationMethod(), new FewestLendersStrategy());
+        LoanProcessor cappedProcessor = new LoanProcessor(MARKET, new FrenchAmortizationMethod(), new FewestLendersStrategy(BigDecimal.valueOf(0.06)));
+
+        Loan loan = processor.findLoanFor(BigDecimal.valueOf(1500), 36).get();
+        Loan cappedLoan = cappedProcessor.findLoanFor(BigDecimal.valueOf(1500), 36).get();
+
+        assertThat(loan.getAllocation().get().asMap()).containsOnlyKeys(JOHN, JANE);
+        assertThat(loan.getAllocation().get().asMap().get(JANE)).isEqualByComparingTo("300");
+        assertThat(loan.getRate()).isEqualByComparingTo("0.034");
+        assertThat(cappedLoan.getAllocation().get().asMap()).containsOnlyKeys(JOHN, MARTIN);
+        assertThat(cappedLoan.getRate()).isEqualByComparingTo("0.022");
+        assertThat(cappedProcessor.findLoanFor(BigDecimal.valueOf(1700), 36)).isEmpty();
+    }
+
+    @Test
+    public void testFewestLendersNeverMoreThanCheapestFirst() {
+        List<LenderData> marketData = QuoteEngineTest.randomMarket(new Random(31), 1000);
+        MarketSnapshot market = MarketSnapshot.of(marketData);
+        MatchingStrategy.Matcher fewest = new FewestLendersStrategy().index(market);
+        MatchingStrategy.Matcher cheapest = new CheapestFirstStrategy().index(market);
+
+        for (int amount = 1000; amount <= 15000; amount += 700) {
+            Optional<Map<LenderData, BigDecimal>> lenders = fewest.match(BigDecimal.valueOf(amount));
+            assertThat(lenders.get().size()).isLessThanOrEqualTo(cheapest.match(BigDecimal.valueOf(amount)).get().size());
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package org.zopa.loanprovider;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+/**
+ * Test quotes over a market partitioned by rate range across workers.
+ */
+public class PartitionCoordinatorTest {
+
+    @Test
+    public void testSameLoanAsLoanProcessor() throws Exception {
+        List<LenderData> marketData = QuoteEngineTest.randomMarket(new Random(13), 2000);
+        LoanProcessor processor = new LoanProcessor(marketData, new FrenchAmortizationMethod());
+        List<PartitionWorker> workers = startWorkers(marketData, 4);
+
+        try (PartitionCoordinator coordinator = new PartitionCoordinator(addressesOf(workers), new FrenchAmortizationMethod())) {
+            assertThat(coordinator.getTotalAvailable()).isEqualTo(processor.getMarket().getTotalAvailable());
+            for (int amount = 1000; amount <= 15000; amount += 100) {
+                Loan expected = processor.findLoanFor(BigDecimal.valueOf(amount), 36).get();
+                Loan loan = coordinator.findLoanFor(BigDecimal.valueOf(amount), 36).get();
+                assertThat(loan).isEqualToIgnoringGivenFields(expected, "allocation");
+                assertThat(loan.getAllocation()).isEmpty();
+            }
+            assertThat(coordinator.findLoanFor(coordinator.getTotalAvailable().add(BigDecimal.ONE), 36)).isEmpty();
+        } finally {
+            closeWorkers(workers);
+        }
+    }
+
+    @Test
+    public void testSameRateScaleWithLendersWithoutMoney() throws Exception {
+        List<LenderData> marketData = new ArrayList<LenderData>() {{
+            add(new LenderData("Martin", BigDecimal.valueOf(0.03), BigDecimal.valueOf(400)));
+            add(new LenderData("Peter", new BigDecimal("0.04125"), BigDecimal.ZERO));
+            add(new LenderData("John", BigDecimal.valueOf(0.06), BigDecimal.valueOf(1200)));
+        }};
+        List<PartitionWorker> workers = startWorkers(marketData, 3);
+
+        try (PartitionCoordinator coordinator = new PartitionCoordinator(addressesOf(workers), new FrenchAmortizationMethod())) {
+            assertThat(workers).hasSize(3);
+            for (int amount : new int[]{400, 1000, 1600}) {
+                Optional<Loan> expected = new LoanProcessor(marketData, new FrenchAmortizationMethod()).findLoanFor(BigDecimal.valueOf(amount), 36);
+                assertThat(coordinator.findLoanFor(BigDecimal.valueOf(amount), 36).get().getRate()).isEqualTo(expected.get().getRate());
+            }
+        } finally {
+            closeWorkers(workers);
+        }
+    }
+
+    @Test
+    public void testLateReplyNotTakenForNextRequest() throws Exception {
+        // Fake worker: the first reply comes after the timeout, the next ones at once
+        AtomicInteger requests = new AtomicInteger();
+        try (ServerSocket server = new ServerSocket(0, 0, InetAddress.getLoopbackAddress())) {
+            Thread worker = new Thread(() -> {
+                try {
+                    while (true) {
+                        Socket socket = server.accept();
+                        new Thread(() -> {
+                            try (Socket connection = socket) {
+                                DataInputStream in = new DataInputStream(connection.getInputStream());
+                                DataOutputStream out = new DataOutputStream(connection.getOutputStream());
+                                in.readInt();
+                                in.readByte();
+                                while (in.readByte() == PartitionWorker.TOTAL) {
+                                    int request = requests.incrementAndGet();
+                                    if (request == 1) {
+                                        Thread.sleep(500);
+                                    }
+                                    out.writeByte(PartitionWorker.OK);
+                                    DecimalCodec.write(out, BigDecimal.valueOf(request));
+                                    out.flush();
+                                }
+                            } catch (IOException | InterruptedException e) {
+                                // Connection closed
+                            }
+                        }).start();
+                    }
+                } catch (IOException e) {
+                    // Server closed
+                }
+            });
+            worker.setDaemon(true);
+            worker.start();
+
+            try (PartitionCoordinator coordinator = new PartitionCoordinator(
+                    Collections.singletonList(new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getLocalPort())),
+                    new FrenchAmortizationMethod(), 200)) {
+                try {
+                    coordinator.getTotalAvailable();
+                    fail("Reply received after the timeout");
+                } catch (SocketTimeoutException e) {
+                    // Expected
+                }
+                assertThat(coordinator.getTotalAvailable()).isEqualTo(BigDecimal.valueOf(2));
+                assertThat(coordinator.getTotalAvailable()).isEqualTo(BigDecimal.valueOf(3));
+            }
+        }
+    }
+
+    @Test
+    public void testAmountNotSentWhenItCanNotBeEncoded() throws Exception {
+        List<LenderData> marketData = QuoteEngineTest.randomMarket(new Random(23), 100);
+        List<PartitionWorker> workers = startWorkers(marketData, 2);
+
+        try (PartitionCoordinator coordinator = new PartitionCoordinator(addressesOf(workers), new FrenchAmortizationMethod())) {
+            try {
+                coordinator.findLoanFor(new BigDecimal("1E-100"), 36);
+                fail("Amount sent");
+            } catch (IllegalArgumentException e) {
+                assertThat(e.getMessage()).startsWith("Amount 1E-100 can not be sent to partition worker");
+            }
+            Loan expected = new LoanProcessor(marketData, new FrenchAmortizationMethod()).findLoanFor(BigDecimal.valueOf(1000), 36).get();
+            assertThat(coordinator.findLoanFor(BigDecimal.valueOf(1000), 36).get()).isEqualToIgnoringGivenFields(expected, "allocation");
+        } finally {
+            closeWorkers(workers);
+        }
+    }
+
+    @Test
+    public void testWorkerRejectsUnboundedDecimals() throws Exception {
+        List<PartitionWorker> workers = startWorkers(QuoteEngineTest.randomMarket(new Random(19), 100), 1);
+
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), workers.get(0).getPort())) {
+            socket.setSoTimeout(10000);
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            out.writeInt(PartitionWorker.MAGIC);
+            out.writeByte(PartitionWorker.VERSION);
+            out.writeByte(PartitionWorker.SHARES);
+            out.writeInt(-1_000_000_000);
+            out.writeShort(1);
+            out.writeByte(1);
+            out.flush();
+            // Connection closed without an answer
+            assertThat(socket.getInputStream().read()).isEqualTo(-1);
+
+            try (PartitionCoordinator coordinator = new PartitionCoordinator(addressesOf(workers), new FrenchAmortizationMethod())) {
+                assertThat(coordinator.findLoanFor(BigDecimal.valueOf(1000), 36)).isNotEmpty();
+            }
+        } finally {
+            closeWorkers(workers);
+        }
+    }
+
+    @Test
+    public void testWorkerProcesses() throws Exception {
+        List<LenderData> marketData = QuoteEngineTest.randomMarket(new Random(17), 500);
+        StringBuilder csv = new StringBuilder("Lender,Rate,Available\n");
+        marketData.forEach(lenderData -> csv.append(lenderData.getName()).append(',')
+                .append(lenderData.getRate().toPlainString()).append(',')
+                .append(lenderData.getAvailable().toPlainString()).append('\n'));
+        String marketFile = HelpersTest.createTemporalFile(csv.toString());
+        BigDecimal[] bands = ShardedMarket.rateBands(marketData.stream().map(LenderData::getRate).sorted().toArray(BigDecimal[]::new), 3);
+
+        List<Process> processes = new ArrayList<>();
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        try {
+            for (int i = 0; i <= bands.length; i++) {
+                Process process = new ProcessBuilder(
+                        System.getProperty("java.home") + File.separator + "bin" + File.separator + "java",
+                        "-cp", System.getProperty("java.class.path"),
+                        Main.class.getName(), "--worker", marketFile, "0",
+                        i == 0 ? "-" : bands[i - 1].toPlainString(),
+                        i == bands.length ? "-" : bands[i].toPlainString())
+                        .redirectErrorStream(true)
+                        .start();
+                processes.add(process);
+                addresses.add(new InetSocketAddress("localhost", portOf(process)));
+            }
+
+            LoanProcessor processor = new LoanProcessor(marketData, new FrenchAmortizationMethod());
+            try (PartitionCoordinator coordinator = new PartitionCoordinator(addresses, new FrenchAmortizationMethod())) {
+                for (int amount = 1000; amount <= 15000; amount += 1000) {
+                    Optional<Loan> expected = processor.findLoanFor(BigDecimal.valueOf(amount), 36);
+                    Optional<Loan> loan = coordinator.findLoanFor(BigDecimal.valueOf(amount), 36);
+                    assertThat(loan.isPresent()).isEqualTo(expected.isPresent());
+                    if (expected.isPresent()) {
+                        assertThat(loan.get()).isEqualToIgnoringGivenFields(expected.get(), "allocation");
+                    }
+                }
+            }
+        } finally {
+            processes.forEach(Process::destroy);
+        }
+    }
+
+    private static int portOf(Process process) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+        String line = reader.readLine();
+        assertThat(line).startsWith("Partition worker listening on port ");
+        return Integer.parseInt(line.substring(line.lastIndexOf(' ') + 1));
+    }
+
+    private static List<PartitionWorker> startWorkers(List<LenderData> marketData, int partitions) throws IOException {
+        BigDecimal[] bands = ShardedMarket.rateBands(marketData.stream().map(LenderData::getRate).sorted().toArray(BigDecimal[]::new), partitions);
+        List<PartitionWorker> workers = new ArrayList<>();
+        for (int i = 0; i <= bands.length; i++) {
+            BigDecimal lowerRate = i == 0 ? null : bands[i - 1];
+            BigDecimal upperRate = i == bands.length ? null : bands[i];
+            List<LenderData> partition = new ArrayList<>();
+            for (LenderData lenderData : marketData) {
+                if ((lowerRate == null || lenderData.getRate().compareTo(lowerRate) >= 0)
+                        && (upperRate == null || lenderData.getRate().compareTo(upperRate) < 0)) {
+                    partition.add(lenderData);
+                }
+            }
+            PartitionWorker worker = new PartitionWorker(partition, 0);
+            worker.start();
+            workers.add(worker);
+        }
+        return workers;
+    }
+
+    private static List<InetSocketAddress> addressesOf(List<PartitionWorker> workers) {
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        workers.forEach(worker -> addresses.add(new InetSocketAddress("localhost", worker.getPort())));
+        return addresses;
+    }
+
+    private static void closeWorkers(List<PartitionWorker> workers) throws IOException {
+        for (PartitionWorker worker : workers) {
+            worker.close();
+        }
+    }
+}
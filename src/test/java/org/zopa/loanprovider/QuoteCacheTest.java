@@ -0,0 +1,94 @@
+package org.zopa.loanprovider;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test quote cache by market version, amount and months.
+ */
+public class QuoteCacheTest {
+
+    private static final List<LenderData> MARKET = new ArrayList<LenderData>() {{
+        add(new LenderData("Martin", BigDecimal.valueOf(0.03), BigDecimal.valueOf(400)));
+        add(new LenderData("Peter", BigDecimal.valueOf(0.06), BigDecimal.valueOf(60)));
+        add(new LenderData("John", BigDecimal.valueOf(0.02), BigDecimal.valueOf(1200)));
+    }};
+
+    @Test
+    public void testCachedSameAsProcessor() {
+        LoanProcessor processor = new LoanProcessor(QuoteEngineTest.randomMarket(new Random(21), 1000), new FrenchAmortizationMethod());
+        QuoteCache cache = new QuoteCache();
+
+        for (int round = 0; round < 2; round++) {
+            for (int amount = 1000; amount <= 15000; amount += 100) {
+                Optional<Loan> expected = processor.findLoanFor(BigDecimal.valueOf(amount), 36);
+                Optional<Loan> loan = cache.findLoanFor(processor, BigDecimal.valueOf(amount), 36);
+                assertThat(loan.isPresent()).isEqualTo(expected.isPresent());
+                if (expected.isPresent()) {
+                    assertThat(loan.get()).isEqualToIgnoringGivenFields(expected.get(), "allocation");
+                }
+            }
+        }
+        assertThat(cache.getStats().missCount()).isEqualTo(141);
+        assertThat(cache.getStats().hitCount()).isEqualTo(141);
+    }
+
+    @Test
+    public void testKeyedByVersionAmountAndMonths() {
+        LoanProcessor processor = new LoanProcessor(MARKET, new FrenchAmortizationMethod());
+        LoanProcessor sameMarketReloaded = new LoanProcessor(MARKET, new FrenchAmortizationMethod());
+        QuoteCache cache = new QuoteCache();
+
+        Optional<Loan> loan = cache.findLoanFor(processor, BigDecimal.valueOf(1000), 36);
+
+        assertThat(cache.findLoanFor(processor, BigDecimal.valueOf(1000), 36).get()).isSameAs(loan.get());
+        assertThat(cache.findLoanFor(processor, BigDecimal.valueOf(1000), 12).get()).isNotSameAs(loan.get());
+        assertThat(cache.findLoanFor(processor, new BigDecimal("1000.00"), 36).get().getRequestedAmount()).isEqualTo("1000.00");
+        assertThat(cache.findLoanFor(sameMarketReloaded, BigDecimal.valueOf(1000), 36).get()).isNotSameAs(loan.get());
+        assertThat(cache.findLoanFor(processor, BigDecimal.valueOf(2000), 36)).isEmpty();
+        assertThat(cache.findLoanFor(processor, BigDecimal.valueOf(2000), 36)).isEmpty();
+        assertThat(cache.getStats().hitCount()).isEqualTo(2);
+        assertThat(cache.size()).isEqualTo(5);
+    }
+
+    @Test
+    public void testBounded() {
+        LoanProcessor processor = new LoanProcessor(MARKET, new FrenchAmortizationMethod());
+        QuoteCache cache = new QuoteCache(10, false);
+
+        for (int amount = 100; amount <= 1600; amount += 100) {
+            cache.findLoanFor(processor, BigDecimal.valueOf(amount), 36);
+        }
+
+        assertThat(cache.size()).isLessThanOrEqualTo(10);
+        assertThat(cache.getStats().evictionCount()).isGreaterThanOrEqualTo(6);
+    }
+
+    @Test
+    public void testEnginePrewarmedOnNewMarket() {
+        QuoteCache cache = new QuoteCache(QuoteCache.DEFAULT_MAXIMUM_SIZE, true);
+        QuoteEngine engine = new QuoteEngine(MarketSnapshot.of(MARKET), new FrenchAmortizationMethod(), cache);
+
+        assertThat(cache.size()).isEqualTo(141);
+        assertThat(engine.findLoanFor(BigDecimal.valueOf(1000), 36)).isNotEmpty();
+        assertThat(cache.getStats().hitCount()).isEqualTo(1);
+
+        List<LenderData> cheaperMarket = new ArrayList<>(MARKET);
+        cheaperMarket.add(new LenderData("Jane", BigDecimal.valueOf(0.01), BigDecimal.valueOf(20000)));
+        engine.publish(MarketSnapshot.of(cheaperMarket));
+
+        // Entries of the old market dropped
+        assertThat(cache.size()).isEqualTo(141);
+        assertThat(engine.findLoanFor(BigDecimal.valueOf(15000), 36).get().getRate()).isEqualByComparingTo("0.01");
+        assertThat(cache.getStats().hitCount()).isEqualTo(2);
+        assertThat(engine.findLoanFor(BigDecimal.valueOf(15000), 24)).isNotEmpty();
+        assertThat(cache.getStats().missCount()).isEqualTo(283);
+    }
+}
@@ -0,0 +1,114 @@
+package org.zopa.loanprovider;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test concurrent quoting over a shared market.
+ */
+public class QuoteEngineTest {
+
+    private static final int THREADS = 8;
+    private static final int QUOTES_PER_THREAD = 2000;
+
+    @Test
+    public void testConcurrentQuotesSameAsSingleThreaded() throws Exception {
+        List<LenderData> marketData = randomMarket(new Random(7), 5000);
+        Map<Integer, Optional<Loan>> expected = new HashMap<>();
+        for (int amount = 1000; amount <= 15000; amount += 100) {
+            expected.put(amount, new LoanProcessor(new ArrayList<>(marketData), new FrenchAmortizationMethod())
+                    .findLoanFor(BigDecimal.valueOf(amount), 36));
+        }
+
+        QuoteEngine engine = new QuoteEngine(marketData, new FrenchAmortizationMethod());
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                final Random random = new Random(t);
+                results.add(executor.submit(() -> {
+                    for (int i = 0; i < QUOTES_PER_THREAD; i++) {
+                        int amount = 1000 + random.nextInt(141) * 100;
+                        assertSameLoan(engine.findLoanFor(BigDecimal.valueOf(amount), 36), expected.get(amount));
+                    }
+                    return QUOTES_PER_THREAD;
+                }));
+            }
+            for (Future<Integer> result : results) {
+                assertThat(result.get()).isEqualTo(QUOTES_PER_THREAD);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testPublishWhileQuoting() throws Exception {
+        List<LenderData> cheapMarket = new ArrayList<LenderData>() {{
+            add(new LenderData("Martin", BigDecimal.valueOf(0.03), BigDecimal.valueOf(20000)));
+        }};
+        List<LenderData> expensiveMarket = new ArrayList<LenderData>() {{
+            add(new LenderData("Peter", BigDecimal.valueOf(0.09), BigDecimal.valueOf(20000)));
+        }};
+        MarketSnapshot cheap = MarketSnapshot.of(cheapMarket);
+        MarketSnapshot expensive = MarketSnapshot.of(expensiveMarket);
+        QuoteEngine engine = new QuoteEngine(cheap, new FrenchAmortizationMethod());
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                results.add(executor.submit((Callable<Integer>) () -> {
+                    for (int i = 0; i < QUOTES_PER_THREAD; i++) {
+                        BigDecimal rate = engine.findLoanFor(BigDecimal.valueOf(5000), 36).get().getRate();
+                        // Always the whole market, never a mix
+                        assertThat(rate.compareTo(new BigDecimal("0.03")) == 0 || rate.compareTo(new BigDecimal("0.09")) == 0).isTrue();
+                    }
+                    return QUOTES_PER_THREAD;
+                }));
+            }
+            for (int i = 0; i < 1000; i++) {
+                engine.publish(i % 2 == 0 ? expensive : cheap);
+            }
+            for (Future<Integer> result : results) {
+                assertThat(result.get()).isEqualTo(QUOTES_PER_THREAD);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(engine.getMarket()).isSameAs(cheap);
+    }
+
+    private static void assertSameLoan(Optional<Loan> loan, Optional<Loan> expected) {
+        assertThat(loan.isPresent()).isEqualTo(expected.isPresent());
+        if (expected.isPresent()) {
+            assertThat(loan.get().getRate()).isEqualTo(expected.get().getRate());
+            assertThat(loan.get().getMonthlyRepayment()).isEqualTo(expected.get().getMonthlyRepayment());
+            assertThat(loan.get().getTotalRepayment()).isEqualTo(expected.get().getTotalRepayment());
+        }
+    }
+
+    static List<LenderData> randomMarket(Random random, int lenders) {
+        List<LenderData> marketData = new ArrayList<>();
+        for (int i = 0; i < lenders; i++) {
+            marketData.add(new LenderData("Lender" + i,
+                    BigDecimal.valueOf(random.nextInt(90) + 10, 3),
+                    BigDecimal.valueOf(random.nextInt(1000) + 1)));
+        }
+        return marketData;
+    }
+
+}
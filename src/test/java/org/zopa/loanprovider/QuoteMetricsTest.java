@@ -0,0 +1,101 @@
+package org.zopa.loanprovider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * Test quote metrics and histograms.
+ */
+public class QuoteMetricsTest {
+
+    @Before
+    public void setUp() {
+        QuoteMetrics.reset();
+    }
+
+    @After
+    public void tearDown() {
+        QuoteMetrics.setEnabled(false);
+        QuoteMetrics.reset();
+    }
+
+    @Test
+    public void testHistogramBuckets() {
+        for (long value : new long[]{0, 1, 31, 32, 33, 63, 64, 1000, 123_456_789, Long.MAX_VALUE}) {
+            int bucket = Histogram.bucketOf(value);
+            assertThat(Histogram.highestValueOf(bucket)).isGreaterThanOrEqualTo(value);
+            assertThat(bucket == 0 || Histogram.highestValueOf(bucket - 1) < value).isTrue();
+        }
+        assertThat(Histogram.highestValueOf(Histogram.bucketOf(Long.MAX_VALUE))).isEqualTo(Long.MAX_VALUE);
+    }
+
+    @Test
+    public void testHistogramPercentiles() {
+        Histogram histogram = new Histogram("test");
+        for (long value = 1; value <= 10_000; value++) {
+            histogram.record(value);
+        }
+
+        assertThat(histogram.getCount()).isEqualTo(10_000);
+        assertThat(histogram.getMean()).isEqualTo(5000.5);
+        assertThat(histogram.getMax()).isEqualTo(10_000);
+        // Relative error below 1/32
+        assertThat((double) histogram.getMedian()).isCloseTo(5000, within(5000 / 32.0));
+        assertThat((double) histogram.get99thPercentile()).isCloseTo(9900, within(9900 / 32.0));
+        assertThat(histogram.get999thPercentile()).isLessThanOrEqualTo(10_000);
+        assertThat(histogram.getValueAtPercentile(100)).isEqualTo(10_000);
+
+        histogram.reset();
+        assertThat(histogram.getCount()).isEqualTo(0);
+        assertThat(histogram.getMedian()).isEqualTo(0);
+    }
+
+    @Test
+    public void testQuotesRecorded() throws IOException {
+        QuoteMetrics.setEnabled(true);
+        LoanProcessor processor = new LoanProcessor(MappedFileReader.getMarketData("market.csv"), new FrenchAmortizationMethod());
+        processor.findLoanFor(BigDecimal.valueOf(1000), 36);
+        processor.findLoanFor(BigDecimal.valueOf(1700), 36);
+        processor.findLoanFor(BigDecimal.valueOf(15000), 36);
+
+        assertThat(QuoteMetrics.FILE_READ.getCount()).isEqualTo(1);
+        assertThat(QuoteMetrics.QUOTE.getCount()).isEqualTo(3);
+        assertThat(QuoteMetrics.LENDER_COLLECTION.getCount()).isEqualTo(2);
+        assertThat(QuoteMetrics.AMORTIZATION.getCount()).isEqualTo(2);
+        assertThat(QuoteMetrics.LENDERS_SCANNED.getCount()).isEqualTo(2);
+        assertThat(QuoteMetrics.LENDERS_SCANNED.getMax())
+                .isEqualTo(StreamingMatcher.cheapestLendersFor(processor.getMarket().iterator(), BigDecimal.valueOf(1700)).size());
+        assertThat(QuoteMetrics.report()).contains("quote", "count=3", "lendersScanned");
+    }
+
+    @Test
+    public void testNothingRecordedWhenDisabled() {
+        LoanProcessor processor = new LoanProcessor(QuoteEngineTest.randomMarket(new Random(17), 100), new FrenchAmortizationMethod());
+        processor.findLoanFor(BigDecimal.valueOf(1000), 36);
+
+        assertThat(QuoteMetrics.QUOTE.getCount()).isEqualTo(0);
+        assertThat(QuoteMetrics.LENDERS_SCANNED.getCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void testJmx() throws JMException {
+        QuoteMetrics.registerMBeans();
+        QuoteMetrics.registerMBeans();
+        QuoteMetrics.QUOTE.record(1500);
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        assertThat(server.getAttribute(QuoteMetrics.objectName(QuoteMetrics.QUOTE), "Count")).isEqualTo(1L);
+        assertThat(server.getAttribute(QuoteMetrics.objectName(QuoteMetrics.QUOTE), "Max")).isEqualTo(1500L);
+    }
+}
@@ -0,0 +1,77 @@
+package org.zopa.loanprovider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test quote server answers.
+ */
+public class QuoteServerTest {
+
+    private QuoteServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        String marketDataFilePath = getClass().getClassLoader().getResource("market.csv").getFile();
+        List<LenderData> marketData = FileReader.getMarketData(marketDataFilePath);
+        server = new QuoteServer(new QuoteEngine(marketData, new FrenchAmortizationMethod()), 0, 2);
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    public void testQuote() throws IOException {
+        String expected = Printer.formatResult(server.getEngine().findLoanFor(BigDecimal.valueOf(1000), 36));
+        assertThat(get("/quote?amount=1000", 200)).isEqualTo(expected).contains("Rate: 7.0%");
+        assertThat(get("/quote?amount=1000&months=36", 200)).isEqualTo(expected);
+    }
+
+    @Test
+    public void testQuoteNotPossible() throws IOException {
+        assertThat(get("/quote?amount=15000", 200)).contains("The market does not have sufficient offers from lenders to satisfy the loan");
+    }
+
+    @Test
+    public void testQuoteValidation() throws IOException {
+        assertThat(get("/quote?amount=1150", 400)).contains("Amount requested must be for 100 increment");
+        assertThat(get("/quote?amount=20000", 400)).contains("Amount requested must be between 1000 and 15000");
+        assertThat(get("/quote?amount=abc", 400)).contains("Amount parameter must be a number");
+        assertThat(get("/quote", 400)).contains("Amount parameter must be a number");
+        assertThat(get("/quote?amount=1000&months=abc", 400)).contains("Months parameter must be a number");
+        assertThat(get("/quote?amount=1000&months=0", 400)).contains("Months requested must be between 1 and 360");
+        assertThat(get("/quote?amount=1000&months=20000", 400)).contains("Months requested must be between 1 and 360");
+    }
+
+    private String get(String path, int expectedStatus) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + server.getPort() + path).openConnection();
+        assertThat(connection.getResponseCode()).isEqualTo(expectedStatus);
+        try (InputStream in = expectedStatus < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                out.write(buffer, 0, read);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+}
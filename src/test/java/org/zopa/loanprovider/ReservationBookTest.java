@@ -0,0 +1,124 @@
+package org.zopa.loanprovider;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test bookings subtract the money given by each lender.
+ */
+public class ReservationBookTest {
+
+    @Test
+    public void testReservationDebitsCheapestLenders() {
+        LenderData martin = new LenderData("Martin", BigDecimal.valueOf(0.03), BigDecimal.valueOf(400));
+        LenderData peter = new LenderData("Peter", BigDecimal.valueOf(0.06), BigDecimal.valueOf(1000));
+        LenderData john = new LenderData("John", BigDecimal.valueOf(0.02), BigDecimal.valueOf(1200));
+        List<LenderData> marketData = new ArrayList<>();
+        marketData.add(martin);
+        marketData.add(peter);
+        marketData.add(john);
+        ReservationBook book = new ReservationBook(MarketSnapshot.of(marketData), new FrenchAmortizationMethod());
+
+        ReservationBook.Reservation first = book.reserve(BigDecimal.valueOf(1500), 36).get();
+        Loan expected = new LoanProcessor(marketData, new FrenchAmortizationMethod()).findLoanFor(BigDecimal.valueOf(1500), 36).get();
+        assertThat(first.getLoan().getRate()).isEqualByComparingTo(expected.getRate());
+        assertThat(first.getLoan().getMonthlyRepayment()).isEqualTo(expected.getMonthlyRepayment());
+        assertThat(first.getAllocations().keySet()).containsExactly(john, martin);
+        assertThat(first.getAllocations().get(martin)).isEqualByComparingTo(BigDecimal.valueOf(300));
+        assertThat(book.getAvailable(john)).isEqualByComparingTo(BigDecimal.ZERO);
+        assertThat(book.getAvailable(martin)).isEqualByComparingTo(BigDecimal.valueOf(100));
+
+        // Same amount again is taken from the next lenders
+        ReservationBook.Reservation second = book.reserve(BigDecimal.valueOf(1000), 36).get();
+        assertThat(second.getAllocations().keySet()).containsExactly(martin, peter);
+        assertThat(book.reserve(BigDecimal.valueOf(1000), 36)).isEmpty();
+        assertThat(book.getTotalAvailable()).isEqualByComparingTo(BigDecimal.valueOf(100));
+
+        book.release(first);
+        book.release(first);
+        assertThat(book.getTotalAvailable()).isEqualByComparingTo(BigDecimal.valueOf(1600));
+        assertThat(book.getAvailable(john)).isEqualByComparingTo(BigDecimal.valueOf(1200));
+    }
+
+    @Test
+    public void testReleasedMoneyBeforeDrainedLendersIsBookedAgain() {
+        List<LenderData> marketData = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            marketData.add(new LenderData("Lender" + i, BigDecimal.valueOf(100 + i, 4), BigDecimal.valueOf(100)));
+        }
+        MarketSnapshot market = MarketSnapshot.of(marketData);
+        ReservationBook book = new ReservationBook(market, new FrenchAmortizationMethod());
+
+        ReservationBook.Reservation first = book.reserve(BigDecimal.valueOf(250), 36).get();
+        for (int i = 0; i < 10; i++) {
+            book.reserve(BigDecimal.valueOf(300), 36).get();
+        }
+        assertThat(book.getAvailable(32)).isEqualByComparingTo(BigDecimal.valueOf(50));
+
+        book.release(first);
+        // The cheapest lenders have money again: taken before the next ones
+        ReservationBook.Reservation again = book.reserve(BigDecimal.valueOf(350), 36).get();
+        assertThat(again.getAllocations().keySet()).containsExactly(market.get(0), market.get(1), market.get(2), market.get(32), market.get(33));
+        assertThat(book.getAvailable(market.get(2))).isEqualByComparingTo(BigDecimal.ZERO);
+        assertThat(book.getAvailable(33)).isEqualByComparingTo(BigDecimal.valueOf(50));
+        assertThat(book.getTotalAvailable()).isEqualByComparingTo(BigDecimal.valueOf(100 * 100 - 3000 - 350));
+    }
+
+    @Test
+    public void testConcurrentReservationsNeverOverAllocate() throws Exception {
+        List<LenderData> marketData = QuoteEngineTest.randomMarket(new Random(3), 500);
+        ReservationBook book = new ReservationBook(MarketSnapshot.of(marketData), new FrenchAmortizationMethod());
+        BigDecimal initialTotal = book.getTotalAvailable();
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<List<ReservationBook.Reservation>>> results = new ArrayList<>();
+        try {
+            for (int t = 0; t < 8; t++) {
+                final Random random = new Random(t);
+                results.add(executor.submit(() -> {
+                    List<ReservationBook.Reservation> reservations = new ArrayList<>();
+                    for (int i = 0; i < 200; i++) {
+                        Optional<ReservationBook.Reservation> reservation = book.reserve(BigDecimal.valueOf(1000 + random.nextInt(141) * 100), 36);
+                        reservation.ifPresent(reservations::add);
+                        if (reservation.isPresent() && i % 3 == 0) {
+                            book.release(reservation.get());
+                            reservations.remove(reservation.get());
+                        }
+                    }
+                    return reservations;
+                }));
+            }
+
+            Map<LenderData, BigDecimal> given = new HashMap<>();
+            BigDecimal booked = BigDecimal.ZERO;
+            for (Future<List<ReservationBook.Reservation>> result : results) {
+                for (ReservationBook.Reservation reservation : result.get()) {
+                    booked = booked.add(reservation.getLoan().getRequestedAmount());
+                    reservation.getAllocations().forEach((lender, amount) -> given.merge(lender, amount, BigDecimal::add));
+                }
+            }
+
+            assertThat(book.getTotalAvailable()).isEqualByComparingTo(initialTotal.subtract(booked));
+            for (LenderData lender : marketData) {
+                BigDecimal lenderGiven = given.getOrDefault(lender, BigDecimal.ZERO);
+                assertThat(lenderGiven).isLessThanOrEqualTo(lender.getAvailable());
+                assertThat(book.getAvailable(lender)).isEqualByComparingTo(lender.getAvailable().subtract(lenderGiven));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+}
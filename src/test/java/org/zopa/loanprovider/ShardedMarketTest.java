@@ -0,0 +1,162 @@
+package org.zopa.loanprovider;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test quotes and updates over a market split in rate bands.
+ */
+public class ShardedMarketTest {
+
+    @Test
+    public void testShardedSameAsIndexedProcessor() {
+        List<LenderData> marketData = QuoteEngineTest.randomMarket(new Random(3), 2000);
+        PrefixSumIndex index = new PrefixSumIndex(MarketSnapshot.of(marketData));
+        LoanProcessor processor = new LoanProcessor(index, new FrenchAmortizationMethod());
+
+        for (int shards : new int[]{1, 3, 8, 64}) {
+            ShardedMarket market = new ShardedMarket(marketData, shards);
+            ShardedLoanProcessor shardedProcessor = new ShardedLoanProcessor(market, new FrenchAmortizationMethod());
+            assertThat(market.getTotalAvailable()).isEqualByComparingTo(MarketSnapshot.of(marketData).getTotalAvailable());
+            for (int amount = 1000; amount <= 15000; amount += 100) {
+                Loan expected = processor.findLoanFor(BigDecimal.valueOf(amount), 36).get();
+                Loan loan = shardedProcessor.findLoanFor(BigDecimal.valueOf(amount), 36).get();
+                assertThat(loan.getRate()).isEqualTo(expected.getRate());
+                assertThat(loan.getMonthlyRepayment()).isEqualTo(expected.getMonthlyRepayment());
+            }
+            assertThat(market.calculateShareRate(market.getTotalAvailable())).isEqualTo(
+                    index.calculateShareRate(market.getTotalAvailable()));
+            assertThat(shardedProcessor.findLoanFor(market.getTotalAvailable().add(BigDecimal.ONE), 36)).isEmpty();
+        }
+    }
+
+    @Test
+    public void testSameRateInOneShard() {
+        List<LenderData> marketData = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            marketData.add(new LenderData("Lender" + i, BigDecimal.valueOf(i < 8 ? 0.05 : 0.07), BigDecimal.valueOf(100)));
+        }
+
+        ShardedMarket market = new ShardedMarket(marketData, 4);
+
+        int withCheapRate = 0;
+        for (int i = 0; i < market.getShardsCount(); i++) {
+            for (LenderData lenderData : market.getShard(i)) {
+                if (lenderData.getRate().compareTo(BigDecimal.valueOf(0.05)) == 0) {
+                    withCheapRate = Math.max(withCheapRate, market.getShard(i).size());
+                }
+            }
+        }
+        assertThat(withCheapRate).isEqualTo(8);
+        assertThat(market.calculateShareRate(BigDecimal.valueOf(900)).get()).isEqualByComparingTo("0.05222223");
+    }
+
+    @Test
+    public void testShardsUpdatedIndependently() {
+        List<LenderData> marketData = new ArrayList<LenderData>() {{
+            add(new LenderData("Martin", BigDecimal.valueOf(0.03), BigDecimal.valueOf(400)));
+            add(new LenderData("Peter", BigDecimal.valueOf(0.06), BigDecimal.valueOf(60)));
+            add(new LenderData("John", BigDecimal.valueOf(0.02), BigDecimal.valueOf(1200)));
+        }};
+        ShardedMarket market = new ShardedMarket(marketData, 3);
+        MarketSnapshot cheapest = market.getShard(0);
+        LenderData jane = new LenderData("Jane", BigDecimal.valueOf(0.07), BigDecimal.valueOf(500));
+
+        market.add(jane);
+
+        assertThat(market.getShard(0)).isSameAs(cheapest);
+        assertThat(market.getShard(2)).containsExactly(marketData.get(1), jane);
+        assertThat(market.calculateShareRate(BigDecimal.valueOf(2000)).get()).isEqualByComparingTo("0.0317");
+        assertThat(market.remove(jane)).isTrue();
+        assertThat(market.remove(jane)).isFalse();
+        assertThat(market.remove(new LenderData("Martin", BigDecimal.valueOf(0.03), BigDecimal.valueOf(400)))).isFalse();
+        assertThat(market.calculateShareRate(BigDecimal.valueOf(2000))).isEmpty();
+    }
+
+    @Test
+    public void testEmptyMarket() {
+        ShardedMarket market = new ShardedMarket(new ArrayList<>(), 4);
+
+        assertThat(market.getShardsCount()).isEqualTo(1);
+        assertThat(market.calculateShareRate(BigDecimal.valueOf(1000))).isEmpty();
+        market.add(new LenderData("Martin", BigDecimal.valueOf(0.03), BigDecimal.valueOf(1000)));
+        assertThat(market.calculateShareRate(BigDecimal.valueOf(1000)).get()).isEqualByComparingTo("0.03");
+    }
+
+    @Test
+    public void testMarketLoadedByAddIsRebalanced() {
+        List<LenderData> marketData = QuoteEngineTest.randomMarket(new Random(21), 20_000);
+        ShardedMarket market = new ShardedMarket(new ArrayList<>(), 8);
+
+        // Cheapest first: every lender goes to the last band until the bands are recomputed
+        marketData.stream().sorted(LoanComparator.byRate).forEach(market::add);
+
+        assertThat(market.getShardsCount()).isEqualTo(8);
+        for (int i = 0; i < market.getShardsCount(); i++) {
+            assertThat(market.getShard(i).size()).isLessThan(marketData.size() / 4);
+        }
+        PrefixSumIndex index = new PrefixSumIndex(MarketSnapshot.of(marketData));
+        for (int amount = 1000; amount <= 15000; amount += 700) {
+            assertThat(market.calculateShareRate(BigDecimal.valueOf(amount))).isEqualTo(index.calculateShareRate(BigDecimal.valueOf(amount)));
+        }
+    }
+
+    @Test
+    public void testRepeatedRatesStayInOneShard() {
+        ShardedMarket market = new ShardedMarket(new ArrayList<>(), 4);
+        for (int i = 0; i < 3 * ShardedMarket.REBALANCE_MIN_SIZE; i++) {
+            market.add(new LenderData("Lender" + i, BigDecimal.valueOf(0.05), BigDecimal.valueOf(100)));
+        }
+
+        // A single rate can not be split
+        assertThat(market.getShardsCount()).isEqualTo(1);
+        assertThat(market.getTotalAvailable()).isEqualByComparingTo(BigDecimal.valueOf(300L * ShardedMarket.REBALANCE_MIN_SIZE));
+    }
+
+    @Test
+    public void testQuotesWhileUpdating() throws Exception {
+        List<LenderData> marketData = QuoteEngineTest.randomMarket(new Random(9), 1000);
+        ShardedMarket market = new ShardedMarket(marketData, 4);
+        BigDecimal minimum = marketData.stream().map(LenderData::getRate).min(BigDecimal::compareTo).get();
+        BigDecimal maximum = marketData.stream().map(LenderData::getRate).max(BigDecimal::compareTo).get();
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int t = 0; t < 3; t++) {
+                results.add(executor.submit(() -> {
+                    for (int i = 0; i < 2000; i++) {
+                        Optional<BigDecimal> rate = market.calculateShareRate(BigDecimal.valueOf(1000 + i));
+                        assertThat(rate.get()).isBetween(minimum, maximum);
+                    }
+                }));
+            }
+            results.add(executor.submit(() -> {
+                Random random = new Random(1);
+                for (int i = 0; i < 200; i++) {
+                    LenderData lenderData = marketData.get(random.nextInt(marketData.size()));
+                    if (market.remove(lenderData)) {
+                        market.add(lenderData);
+                    }
+                }
+            }));
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertThat(market.calculateShareRate(BigDecimal.valueOf(5000)))
+                .isEqualTo(new PrefixSumIndex(MarketSnapshot.of(marketData)).calculateShareRate(BigDecimal.valueOf(5000)));
+    }
+}
@@ -0,0 +1,73 @@
+package org.zopa.loanprovider;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test quotes over streamed lenders.
+ */
+public class StreamingMatcherTest {
+
+    private final StreamingMatcher matcher = new StreamingMatcher(new FrenchAmortizationMethod());
+
+    @Test
+    public void testSameLoanAsLoanProcessor() {
+        Random random = new Random(16);
+        List<LenderData> marketData = QuoteEngineTest.randomMarket(random, 5000);
+        LoanProcessor processor = new LoanProcessor(marketData, new FrenchAmortizationMethod());
+
+        for (int amount = Main.MIN_AMOUNT; amount <= Main.MAX_AMOUNT; amount += 700) {
+            BigDecimal requested = BigDecimal.valueOf(amount);
+            List<LenderData> shuffled = new ArrayList<>(marketData);
+            Collections.shuffle(shuffled, random);
+
+            assertThat(matcher.findLoanFor(shuffled.stream(), requested, 36).get())
+                    .isEqualToIgnoringGivenFields(processor.findLoanFor(requested, 36).get(), "allocation");
+        }
+    }
+
+    @Test
+    public void testOnlyCheapestLendersAreKept() {
+        List<LenderData> marketData = QuoteEngineTest.randomMarket(new Random(17), 5000);
+        BigDecimal amount = BigDecimal.valueOf(15000);
+
+        List<LenderData> cheapest = StreamingMatcher.cheapestLendersFor(marketData.iterator(), amount);
+
+        MarketSnapshot market = MarketSnapshot.of(marketData);
+        BigDecimal covered = BigDecimal.ZERO;
+        int needed = 0;
+        while (covered.compareTo(amount) < 0) {
+            covered = covered.add(market.get(needed++).getAvailable());
+        }
+        assertThat(cheapest).hasSize(needed);
+        for (int i = 0; i < needed; i++) {
+            assertThat(cheapest.get(i)).isSameAs(market.get(i));
+        }
+    }
+
+    @Test
+    public void testNotEnoughOffers() {
+        List<LenderData> marketData = QuoteEngineTest.randomMarket(new Random(18), 10);
+
+        assertThat(matcher.findLoanFor(marketData.iterator(), BigDecimal.valueOf(15000), 36)).isEmpty();
+        assertThat(StreamingMatcher.cheapestLendersFor(marketData.iterator(), BigDecimal.valueOf(15000))).hasSize(10);
+    }
+
+    @Test
+    public void testStreamFromFile() throws IOException {
+        Optional<Loan> loan = matcher.findLoanFor("market.csv", BigDecimal.valueOf(1000), 36);
+        Optional<Loan> expected = new LoanProcessor(FileReader.getMarketData("market.csv"), new FrenchAmortizationMethod())
+                .findLoanFor(BigDecimal.valueOf(1000), 36);
+
+        assertThat(loan.get()).isEqualToIgnoringGivenFields(expected.get(), "allocation");
+    }
+}